@@ -1,12 +1,16 @@
 package com.example.springcrawler;
 
+import com.example.springcrawler.service.CrawlHttpClient;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class SpringcrawlerApplication {
 
 	public static void main(String[] args) {
+		CrawlHttpClient.configureNetworkDefaults();
 		SpringApplication.run(SpringcrawlerApplication.class, args);
 	}
 
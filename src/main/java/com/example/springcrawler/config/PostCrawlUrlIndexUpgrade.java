@@ -0,0 +1,76 @@
+package com.example.springcrawler.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Discovery relies on the unique index on {@code posts.crawl_url}: its {@code INSERT IGNORE} only skips a
+ * known URL because the index rejects it. {@code ddl-auto=update} cannot create that index on a table that
+ * already holds duplicate URLs; it logs the failure and carries on. When the index is missing this logs the ids
+ * of the duplicate rows, keeping the most advanced copy of each URL (published, then crawled, then the oldest
+ * row). Only with {@code crawler.migration.dedupe-crawl-url=true} are those rows marked DELETED and their
+ * {@code crawl_url} cleared (the URL stays in {@code source_url}; the index allows any number of NULLs), after
+ * which the index is created. Nothing is removed, and a failure is logged without stopping startup.
+ */
+@Component
+public class PostCrawlUrlIndexUpgrade implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(PostCrawlUrlIndexUpgrade.class);
+    private static final String INDEX_NAME = "uk_posts_crawl_url";
+    private static final String RANK = "CASE %s.status WHEN 'PUBLISHED' THEN 3 WHEN 'CRAWLED' THEN 2 WHEN 'DELETED' THEN 0 ELSE 1 END";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean dedupe;
+
+    public PostCrawlUrlIndexUpgrade(JdbcTemplate jdbcTemplate,
+                                    @Value("${crawler.migration.dedupe-crawl-url:false}") boolean dedupe) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dedupe = dedupe;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            Integer indexes = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.STATISTICS " +
+                            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'posts' AND INDEX_NAME = ?",
+                    Integer.class, INDEX_NAME);
+            if (indexes != null && indexes > 0) {
+                return;
+            }
+            List<Long> duplicates = jdbcTemplate.queryForList(
+                    "SELECT DISTINCT dup.id FROM posts dup JOIN posts keep " +
+                            "ON keep.crawl_url = dup.crawl_url AND keep.id <> dup.id " +
+                            "WHERE " + RANK.formatted("keep") + " > " + RANK.formatted("dup") +
+                            " OR (" + RANK.formatted("keep") + " = " + RANK.formatted("dup") + " AND keep.id < dup.id) " +
+                            "ORDER BY dup.id",
+                    Long.class);
+            if (!duplicates.isEmpty()) {
+                log.warn("Unique index {} is missing and {} posts share a crawl_url with a better copy: ids {}",
+                        INDEX_NAME, duplicates.size(), duplicates);
+                if (!dedupe) {
+                    log.warn("Discovery may queue duplicate posts until they are resolved. Set "
+                            + "crawler.migration.dedupe-crawl-url=true to mark them DELETED and create the index.");
+                    return;
+                }
+                jdbcTemplate.batchUpdate(
+                        "UPDATE posts SET status = 'DELETED', source_url = COALESCE(source_url, crawl_url), " +
+                                "crawl_url = NULL WHERE id = ?",
+                        duplicates, 500, (ps, id) -> ps.setLong(1, id));
+                log.info("Marked {} duplicate posts DELETED and cleared their crawl_url.", duplicates.size());
+            }
+            jdbcTemplate.execute("CREATE UNIQUE INDEX " + INDEX_NAME + " ON posts (crawl_url)");
+            log.info("Created unique index {} on posts.crawl_url.", INDEX_NAME);
+        } catch (DataAccessException ex) {
+            log.warn("Unique index {} on posts.crawl_url is missing and could not be created; discovery may queue "
+                    + "duplicate posts: {}", INDEX_NAME, ex.getMessage());
+        }
+    }
+}
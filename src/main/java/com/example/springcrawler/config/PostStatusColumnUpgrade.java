@@ -0,0 +1,42 @@
+package com.example.springcrawler.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Older schemas created {@code posts.status} as a MySQL ENUM of the statuses that existed at the time.
+ * {@code ddl-auto=update} never alters existing columns, so new statuses such as FAILED could not be stored.
+ * Converts the column to VARCHAR once; a no-op when it already is one. Runners are called before
+ * {@code ApplicationReadyEvent}, which is when {@code SourceCrawlService} starts its bots.
+ */
+@Component
+public class PostStatusColumnUpgrade implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(PostStatusColumnUpgrade.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PostStatusColumnUpgrade(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            String dataType = jdbcTemplate.query(
+                    "SELECT DATA_TYPE FROM information_schema.COLUMNS " +
+                            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'posts' AND COLUMN_NAME = 'status'",
+                    rs -> rs.next() ? rs.getString(1) : null);
+            if ("enum".equalsIgnoreCase(dataType)) {
+                jdbcTemplate.execute("ALTER TABLE posts MODIFY COLUMN status VARCHAR(20)");
+                log.info("Converted posts.status from ENUM to VARCHAR(20).");
+            }
+        } catch (DataAccessException ex) {
+            log.warn("Could not check posts.status column type: {}", ex.getMessage());
+        }
+    }
+}
@@ -1,19 +1,33 @@
 package com.example.springcrawler.controllers.admin;
 
 import com.example.springcrawler.model.Source;
+import com.example.springcrawler.service.AdminCrawlJobService;
+import com.example.springcrawler.service.ArticleCrawlPipeline;
+import com.example.springcrawler.service.ArticleExtractor;
+import com.example.springcrawler.service.ArticleMetadataReader;
+import com.example.springcrawler.service.CrawlExecutorService;
+import com.example.springcrawler.service.HostGuard;
+import com.example.springcrawler.service.HtmlArchive;
 import com.example.springcrawler.service.PostService;
+import com.example.springcrawler.service.ReextractionService;
+import com.example.springcrawler.service.RobotsTxtService;
+import com.example.springcrawler.service.SeenUrlFilter;
 import com.example.springcrawler.service.SourceCrawlService;
 import com.example.springcrawler.service.SourceService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Set;
 
 @Controller
 @RequestMapping("/admin/crawl")
@@ -22,11 +36,43 @@ public class AdminCrawlController {
     private final SourceCrawlService sourceCrawlService;
     private final SourceService sourceService;
     private final PostService postService;
+    private final CrawlExecutorService crawlExecutorService;
+    private final SeenUrlFilter seenUrlFilter;
+    private final ArticleCrawlPipeline crawlPipeline;
+    private final ArticleExtractor articleExtractor;
+    private final ArticleMetadataReader metadataReader;
+    private final HtmlArchive htmlArchive;
+    private final ReextractionService reextractionService;
+    private final AdminCrawlJobService adminCrawlJobService;
+    private final HostGuard hostGuard;
+    private final RobotsTxtService robotsTxtService;
 
-    public AdminCrawlController(SourceCrawlService sourceCrawlService, SourceService sourceService, PostService postService) {
+    public AdminCrawlController(SourceCrawlService sourceCrawlService,
+                                SourceService sourceService,
+                                PostService postService,
+                                CrawlExecutorService crawlExecutorService,
+                                SeenUrlFilter seenUrlFilter,
+                                ArticleCrawlPipeline crawlPipeline,
+                                ArticleExtractor articleExtractor,
+                                ArticleMetadataReader metadataReader,
+                                HtmlArchive htmlArchive,
+                                ReextractionService reextractionService,
+                                AdminCrawlJobService adminCrawlJobService,
+                                HostGuard hostGuard,
+                                RobotsTxtService robotsTxtService) {
         this.sourceCrawlService = sourceCrawlService;
         this.sourceService = sourceService;
         this.postService = postService;
+        this.crawlExecutorService = crawlExecutorService;
+        this.seenUrlFilter = seenUrlFilter;
+        this.crawlPipeline = crawlPipeline;
+        this.articleExtractor = articleExtractor;
+        this.metadataReader = metadataReader;
+        this.htmlArchive = htmlArchive;
+        this.reextractionService = reextractionService;
+        this.adminCrawlJobService = adminCrawlJobService;
+        this.hostGuard = hostGuard;
+        this.robotsTxtService = robotsTxtService;
     }
 
     public static String getDomain(String url) throws URISyntaxException {
@@ -45,6 +91,7 @@ public class AdminCrawlController {
     @GetMapping("")
     public String showCrawlForm(Model model) {
         model.addAttribute("sources", sourceService.getActiveSources());
+        addCrawlStats(model);
         return "admin-crawl";
     }
 
@@ -52,6 +99,7 @@ public class AdminCrawlController {
     public String crawlCategory(@RequestParam("sourceId") Long sourceId,
                                 Model model) throws URISyntaxException {
         model.addAttribute("sources", sourceService.getActiveSources());
+        addCrawlStats(model);
         model.addAttribute("selectedSourceId", sourceId);
 
         Source source = sourceService.getSourceById(sourceId);
@@ -66,8 +114,14 @@ public class AdminCrawlController {
             return "admin-crawl";
         }
 
-        Set<String> links = sourceCrawlService.crawlSourceForPostLink(source, sourceUrl.trim(), getDomain(sourceUrl));
-        model.addAttribute("links", links);
+        try {
+            AdminCrawlJobService.JobSnapshot job =
+                    adminCrawlJobService.submitSourceScan(source, sourceUrl.trim(), getDomain(sourceUrl));
+            model.addAttribute("jobId", job.id());
+            model.addAttribute("message", "Crawl job " + job.id() + " started.");
+        } catch (IllegalStateException ex) {
+            model.addAttribute("error", ex.getMessage());
+        }
         model.addAttribute("sourceUrl", sourceUrl);
         return "admin-crawl";
     }
@@ -75,8 +129,69 @@ public class AdminCrawlController {
     @PostMapping({"/run-pending", "/get-uncrawl-posts"})
     public String runPendingPosts(Model model) {
         model.addAttribute("sources", sourceService.getActiveSources());
-        sourceCrawlService.crawlUnCrawlPost();
-        model.addAttribute("message", "Processing UNCRAWL posts.");
+        addCrawlStats(model);
+        try {
+            AdminCrawlJobService.JobSnapshot job = adminCrawlJobService.submitPendingPosts();
+            model.addAttribute("jobId", job.id());
+            model.addAttribute("message", "Processing UNCRAWL posts in job " + job.id() + ".");
+        } catch (IllegalStateException ex) {
+            model.addAttribute("error", ex.getMessage());
+        }
         return "admin-crawl";
     }
+
+    @GetMapping("/jobs/{id}")
+    @ResponseBody
+    public ResponseEntity<AdminCrawlJobService.JobSnapshot> getJob(@PathVariable("id") long id) {
+        return ResponseEntity.of(adminCrawlJobService.getJob(id));
+    }
+
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable("id") long id) {
+        return ResponseEntity.of(adminCrawlJobService.subscribe(id));
+    }
+
+    @PostMapping("/reextract")
+    public String reextractSource(@RequestParam("sourceId") Long sourceId, Model model) {
+        model.addAttribute("sources", sourceService.getActiveSources());
+        model.addAttribute("selectedSourceId", sourceId);
+        if (reextractionService.start(sourceId)) {
+            model.addAttribute("message", "Re-extraction started for source " + sourceId + ".");
+        } else {
+            model.addAttribute("error", "Source does not exist or has been removed.");
+        }
+        addCrawlStats(model);
+        return "admin-crawl";
+    }
+
+    private void addCrawlStats(Model model) {
+        model.addAttribute("pagesPerSecond", String.format("%.2f", crawlExecutorService.getPagesPerSecond()));
+        model.addAttribute("pagesFetched", crawlExecutorService.getPagesFetched());
+        model.addAttribute("activeFetches", crawlExecutorService.getActiveCount());
+        model.addAttribute("queuedFetches", crawlExecutorService.getQueuedCount());
+        model.addAttribute("maxConcurrency", crawlExecutorService.getMaxConcurrency());
+        model.addAttribute("throttledHosts", crawlExecutorService.getThrottledHostCount());
+        model.addAttribute("hostRatePerSecond", hostGuard.getRatePerSecond());
+        model.addAttribute("trackedHosts", hostGuard.getTrackedHostCount());
+        model.addAttribute("parkedPosts", crawlPipeline.getParkedCount());
+        model.addAttribute("staleResults", crawlPipeline.getStaleResultCount());
+        model.addAttribute("unhealthyHosts", hostGuard.getUnhealthyHosts());
+        model.addAttribute("robotsEnabled", robotsTxtService.isEnabled());
+        model.addAttribute("robotsOrigins", robotsTxtService.getCachedOriginCount());
+        model.addAttribute("robotsFetches", robotsTxtService.getFetchCount());
+        model.addAttribute("robotsDisallowed", robotsTxtService.getDisallowedCount());
+        model.addAttribute("seenFilterReady", seenUrlFilter.isReady());
+        model.addAttribute("seenFilterUrls", seenUrlFilter.getInsertions());
+        model.addAttribute("seenFilterKb", seenUrlFilter.getMemoryBytes() / 1024);
+        model.addAttribute("pipelineStages", crawlPipeline.getStageStats());
+        model.addAttribute("streamingExtraction", articleExtractor.isStreaming());
+        model.addAttribute("streamedPages", articleExtractor.getStreamedPages());
+        model.addAttribute("streamedInputPercent", String.format("%.1f", articleExtractor.getStreamedInputFraction() * 100));
+        model.addAttribute("metadataHitRates", metadataReader.getHitRates());
+        model.addAttribute("archiveEnabled", htmlArchive.isEnabled());
+        model.addAttribute("archivePages", htmlArchive.getPageCount());
+        model.addAttribute("archiveSegments", htmlArchive.getSegmentCount());
+        model.addAttribute("archiveMb", htmlArchive.getSizeBytes() / (1024 * 1024));
+        model.addAttribute("reextractionJobs", reextractionService.getJobStatuses());
+    }
 }
@@ -8,6 +8,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,6 +26,11 @@ public class AdminSourceController {
         this.categoryService = categoryService;
     }
 
+    @ModelAttribute("discoveryModes")
+    public Source.DiscoveryMode[] discoveryModes() {
+        return Source.DiscoveryMode.values();
+    }
+
     @GetMapping("")
     public String listSources(Model model) {
         model.addAttribute("sources", sourceService.getActiveSources());
@@ -46,9 +52,16 @@ public class AdminSourceController {
                             @RequestParam(required = false) String descriptionSelector,
                             @RequestParam(required = false) String imageSelector,
                             @RequestParam(required = false) String removalSelector,
+                            @RequestParam(required = false) Integer crawlWeight,
+                            @RequestParam(required = false) Source.DiscoveryMode discoveryMode,
+                            @RequestParam(required = false) String discoveryUrl,
+                            @RequestParam(required = false) String linkIncludePatterns,
+                            @RequestParam(required = false) String linkExcludePatterns,
+                            @RequestParam(required = false) String linkContainerSelector,
                             Model model) {
         Source formSource = buildSourceDraft(null, categoryId, url, titleSelector, contentSelector,
-                descriptionSelector, imageSelector, removalSelector);
+                descriptionSelector, imageSelector, removalSelector, crawlWeight, discoveryMode, discoveryUrl,
+                linkIncludePatterns, linkExcludePatterns, linkContainerSelector);
 
         if (!StringUtils.hasText(url)) {
             model.addAttribute("error", "URL must not be empty.");
@@ -59,7 +72,8 @@ public class AdminSourceController {
 
         try {
             sourceService.createSource(categoryId, url.trim(), titleSelector, contentSelector,
-                    descriptionSelector, imageSelector, removalSelector);
+                    descriptionSelector, imageSelector, removalSelector, crawlWeight, discoveryMode, discoveryUrl,
+                    linkIncludePatterns, linkExcludePatterns, linkContainerSelector);
         } catch (IllegalArgumentException ex) {
             model.addAttribute("error", ex.getMessage());
             model.addAttribute("categories", categoryService.getAllCategories());
@@ -90,6 +104,12 @@ public class AdminSourceController {
                              @RequestParam(required = false) String descriptionSelector,
                              @RequestParam(required = false) String imageSelector,
                              @RequestParam(required = false) String removalSelector,
+                             @RequestParam(required = false) Integer crawlWeight,
+                             @RequestParam(required = false) Source.DiscoveryMode discoveryMode,
+                             @RequestParam(required = false) String discoveryUrl,
+                             @RequestParam(required = false) String linkIncludePatterns,
+                             @RequestParam(required = false) String linkExcludePatterns,
+                             @RequestParam(required = false) String linkContainerSelector,
                              Model model) {
         Source existing = sourceService.getSourceById(id);
         if (existing == null || existing.isDeleted()) {
@@ -99,7 +119,8 @@ public class AdminSourceController {
         if (!StringUtils.hasText(url)) {
             model.addAttribute("error", "URL must not be empty.");
             Source draft = buildSourceDraft(id, categoryId, url, titleSelector, contentSelector,
-                    descriptionSelector, imageSelector, removalSelector);
+                    descriptionSelector, imageSelector, removalSelector, crawlWeight, discoveryMode, discoveryUrl,
+                    linkIncludePatterns, linkExcludePatterns, linkContainerSelector);
             if (draft.getCategory() == null) {
                 draft.setCategory(existing.getCategory());
             }
@@ -108,12 +129,21 @@ public class AdminSourceController {
             return "admin-sources-edit";
         }
 
-        Source updated = sourceService.updateSource(id, categoryId, url.trim(), titleSelector,
-                contentSelector, descriptionSelector, imageSelector, removalSelector);
+        Source updated;
+        String error = "Source does not exist or the category is invalid.";
+        try {
+            updated = sourceService.updateSource(id, categoryId, url.trim(), titleSelector,
+                    contentSelector, descriptionSelector, imageSelector, removalSelector, crawlWeight,
+                    discoveryMode, discoveryUrl, linkIncludePatterns, linkExcludePatterns, linkContainerSelector);
+        } catch (IllegalArgumentException ex) {
+            updated = null;
+            error = ex.getMessage();
+        }
         if (updated == null) {
-            model.addAttribute("error", "Source does not exist or the category is invalid.");
+            model.addAttribute("error", error);
             Source draft = buildSourceDraft(id, categoryId, url, titleSelector, contentSelector,
-                    descriptionSelector, imageSelector, removalSelector);
+                    descriptionSelector, imageSelector, removalSelector, crawlWeight, discoveryMode, discoveryUrl,
+                    linkIncludePatterns, linkExcludePatterns, linkContainerSelector);
             if (draft.getCategory() == null) {
                 draft.setCategory(existing.getCategory());
             }
@@ -138,7 +168,13 @@ public class AdminSourceController {
                                     String contentSelector,
                                     String descriptionSelector,
                                     String imageSelector,
-                                    String removalSelector) {
+                                    String removalSelector,
+                                    Integer crawlWeight,
+                                    Source.DiscoveryMode discoveryMode,
+                                    String discoveryUrl,
+                                    String linkIncludePatterns,
+                                    String linkExcludePatterns,
+                                    String linkContainerSelector) {
         Source draft = new Source();
         draft.setId(sourceId);
         if (categoryId != null) {
@@ -153,6 +189,12 @@ public class AdminSourceController {
         draft.setDescriptionSelector(descriptionSelector);
         draft.setImageSelector(imageSelector);
         draft.setRemovalSelector(removalSelector);
+        draft.setCrawlWeight(crawlWeight);
+        draft.setDiscoveryMode(discoveryMode);
+        draft.setDiscoveryUrl(discoveryUrl);
+        draft.setLinkIncludePatterns(linkIncludePatterns);
+        draft.setLinkExcludePatterns(linkExcludePatterns);
+        draft.setLinkContainerSelector(linkContainerSelector);
         return draft;
     }
 }
@@ -3,6 +3,8 @@ package com.example.springcrawler.model;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import com.example.springcrawler.model.Category;
 
 import java.time.LocalDateTime;
@@ -10,7 +12,13 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @NoArgsConstructor
-@Table(name = "posts")
+@Table(name = "posts", indexes = {
+        @Index(name = "uk_posts_crawl_url", columnList = "crawl_url", unique = true),
+        @Index(name = "idx_posts_canonical_url", columnList = "canonical_url"),
+        @Index(name = "idx_posts_status", columnList = "status"),
+        @Index(name = "idx_posts_status_lease", columnList = "status, lease_expires_at"),
+        @Index(name = "idx_posts_status_next_attempt", columnList = "status, next_attempt_at")
+})
 public class Post {
 
     @Id
@@ -45,6 +53,8 @@ public class Post {
     private LocalDateTime publishedAt;
 
     @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(length = 20)
     private Status status = Status.DRAFT;
 
     private boolean uniqueContent = false;
@@ -53,6 +63,18 @@ public class Post {
     private String seoDescription;
     private String seoKeywords;
     private String crawlUrl;
+    // The page's rel=canonical when it names a different URL; links to it are treated as this post.
+    private String canonicalUrl;
+
+    // Work lease: which crawler node holds this post and until when. Expired leases can be claimed again.
+    private String claimedBy;
+    private LocalDateTime leaseExpiresAt;
+    private int attemptCount = 0;
+
+    // Retry bookkeeping for failed fetches; the post is not handed out again before nextAttemptAt.
+    @Column(length = 500)
+    private String lastError;
+    private LocalDateTime nextAttemptAt;
 
     public Post(String title, String slug, String content, String shortDescription, Category category) {
         this.title = title;
@@ -63,6 +85,6 @@ public class Post {
     }
 
     public enum Status {
-        DRAFT, UNCRAWL, CRAWLED, PUBLISHED, DELETED
+        DRAFT, UNCRAWL, CRAWLED, PUBLISHED, DELETED, FAILED
     }
 }
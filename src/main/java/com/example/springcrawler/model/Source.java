@@ -3,6 +3,8 @@ package com.example.springcrawler.model;
 import jakarta.persistence.*;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+
 @Entity
 @Table(name = "sources")
 @Data
@@ -36,4 +38,75 @@ public class Source {
 
     @Column(name = "removal_selector")
     private String removalSelector;
+
+    // Bumped whenever a selector changes, so compiled selectors cached on any crawler node are refreshed.
+    @Column(name = "selector_version")
+    private Integer selectorVersion;
+
+    // Last post id a re-extraction job has finished; null when no job is pending.
+    @Column(name = "reextract_cursor")
+    private Long reextractCursor;
+
+    // Per-source fetch limits; null falls back to the crawler.http.* defaults.
+    @Column(name = "fetch_timeout_ms")
+    private Integer fetchTimeoutMs;
+
+    @Column(name = "max_body_bytes")
+    private Integer maxBodyBytes;
+
+    // Validators from the last listing fetch, used for conditional GETs.
+    @Column(name = "http_etag")
+    private String etag;
+
+    @Column(name = "http_last_modified")
+    private String lastModified;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Relative share of the per-cycle discovery budget; null counts as 1.
+    @Column(name = "crawl_weight")
+    private Integer crawlWeight;
+
+    @Column(name = "last_visited_at")
+    private LocalDateTime lastVisitedAt;
+
+    // Adaptive revisit schedule, driven by how many new links recent visits found.
+    @Column(name = "next_visit_at")
+    private LocalDateTime nextVisitAt;
+
+    @Column(name = "revisit_interval_seconds")
+    private Integer revisitIntervalSeconds;
+
+    @Column(name = "yield_ewma")
+    private Double yieldEwma;
+
+    // How new links are found; null scrapes the listing page at url like HTML.
+    @Enumerated(EnumType.STRING)
+    @Column(name = "discovery_mode", length = 16)
+    private DiscoveryMode discoveryMode;
+
+    // Feed or sitemap to read in FEED and SITEMAP mode; null reads url itself.
+    @Column(name = "discovery_url")
+    private String discoveryUrl;
+
+    // Newest item date already taken from the feed or sitemap; older items are skipped without a lookup.
+    @Column(name = "discovery_watermark")
+    private LocalDateTime discoveryWatermark;
+
+    // URL globs a discovered link must match, one per line; null keeps the same-site ".html" rule.
+    @Column(name = "link_include_patterns", columnDefinition = "TEXT")
+    private String linkIncludePatterns;
+
+    // URL globs that are never queued, e.g. tag, category and pagination pages.
+    @Column(name = "link_exclude_patterns", columnDefinition = "TEXT")
+    private String linkExcludePatterns;
+
+    // Only anchors inside this element of the listing page are scanned; null scans the whole page.
+    @Column(name = "link_container_selector")
+    private String linkContainerSelector;
+
+    public enum DiscoveryMode {
+        HTML, FEED, SITEMAP
+    }
 }
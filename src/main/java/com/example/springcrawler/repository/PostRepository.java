@@ -3,27 +3,94 @@ import com.example.springcrawler.model.Post;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 
 public interface PostRepository extends JpaRepository<Post,Long> {
-    Optional<Post> findPostByCrawlUrl(String crawlUrl);
+    @Query("SELECT p.crawlUrl, p.canonicalUrl FROM Post p WHERE p.crawlUrl IN :urls OR p.canonicalUrl IN :urls")
+    List<Object[]> findKnownUrls(@Param("urls") Collection<String> urls);
+
+    @Query("SELECT p.canonicalUrl FROM Post p WHERE p.canonicalUrl IN :urls")
+    List<String> findKnownCanonicalUrls(@Param("urls") Collection<String> urls);
+
+    @Query("SELECT p.id, p.crawlUrl, p.canonicalUrl FROM Post p WHERE p.id > :afterId AND p.crawlUrl IS NOT NULL ORDER BY p.id")
+    List<Object[]> findCrawlUrlsAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
     Page<Post> findByTitleContainingIgnoreCase(String keyword, Pageable pageable);
+
+    /**
+     * Lock up to {@code limit} claimable rows, skipping rows another node is claiming right now.
+     * Must run inside the transaction that then marks them as claimed.
+     */
     @Query(
-            value = "SELECT * FROM posts WHERE status = :status ORDER BY id ASC",
+            value = "SELECT id FROM posts WHERE status = :status " +
+                    "AND (lease_expires_at IS NULL OR lease_expires_at < :now) " +
+                    "AND (next_attempt_at IS NULL OR next_attempt_at <= :now) " +
+                    "ORDER BY id ASC LIMIT :limit FOR UPDATE SKIP LOCKED",
             nativeQuery = true
     )
-    List<Post> findUncrawledPosts(
-            @Param("status") String status,
-            Pageable pageable
-    );
+    List<Long> lockClaimableIds(@Param("status") String status,
+                                @Param("now") LocalDateTime now,
+                                @Param("limit") int limit);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Post p SET p.claimedBy = :claimedBy, p.leaseExpiresAt = :leaseExpiresAt, " +
+            "p.attemptCount = p.attemptCount + 1 WHERE p.id IN :ids")
+    int claim(@Param("ids") Collection<Long> ids,
+              @Param("claimedBy") String claimedBy,
+              @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
 
     List<Post> findPostByStatus(Post.Status status);
 
+    @Query("SELECT MIN(p.id) FROM Post p WHERE p.status = :status")
+    Long findMinIdByStatus(@Param("status") Post.Status status);
+
+    @Query("SELECT MAX(p.id) FROM Post p WHERE p.status = :status")
+    Long findMaxIdByStatus(@Param("status") Post.Status status);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Post p SET p.status = :promoted, p.updatedAt = :now " +
+            "WHERE p.status = :current AND p.id > :fromId AND p.id <= :toId AND p.nextAttemptAt IS NULL AND (" +
+            "TRIM(COALESCE(p.title, '')) <> '' OR " +
+            "TRIM(COALESCE(p.content, '')) <> '' OR " +
+            "TRIM(COALESCE(p.shortDescription, '')) <> '' OR " +
+            "TRIM(COALESCE(p.imgUrl, '')) <> '')")
+    int promoteStatusWhereContentPresent(@Param("current") Post.Status current,
+                                         @Param("promoted") Post.Status promoted,
+                                         @Param("fromId") Long fromId,
+                                         @Param("toId") Long toId,
+                                         @Param("now") LocalDateTime now);
+
+    @Query("SELECT p.id FROM Post p WHERE p.source.id = :sourceId AND p.status = :status AND p.id > :afterId ORDER BY p.id")
+    List<Long> findIdsBySourceAfterId(@Param("sourceId") Long sourceId,
+                                      @Param("status") Post.Status status,
+                                      @Param("afterId") Long afterId,
+                                      Pageable pageable);
+
+    @Query("SELECT COUNT(p) FROM Post p WHERE p.source.id = :sourceId AND p.status = :status AND p.id > :afterId")
+    long countBySourceAfterId(@Param("sourceId") Long sourceId,
+                              @Param("status") Post.Status status,
+                              @Param("afterId") Long afterId);
+
+    // Hands the attempt counted by the claim back; waiting out a host's open circuit is not a failed attempt.
+    @Transactional
+    @Modifying
+    @Query("UPDATE Post p SET p.attemptCount = CASE WHEN p.attemptCount > 0 THEN p.attemptCount - 1 ELSE 0 END, " +
+            "p.claimedBy = NULL, p.leaseExpiresAt = NULL, p.nextAttemptAt = :until, p.updatedAt = :now " +
+            "WHERE p.id IN :ids AND p.status = :status")
+    int park(@Param("ids") Collection<Long> ids,
+             @Param("status") Post.Status status,
+             @Param("until") LocalDateTime until,
+             @Param("now") LocalDateTime now);
+
     List<Post> findByStatusOrderByCreatedAtDesc(Post.Status status);
 
     Page<Post> findByStatus(Post.Status status, Pageable pageable);
@@ -1,11 +1,82 @@
 package com.example.springcrawler.repository;
 
+import com.example.springcrawler.model.Category;
 import com.example.springcrawler.model.Source;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface SourceRepository extends JpaRepository<Source, Long> {
 
     List<Source> findAllByDeletedFalseOrderByIdDesc();
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Source s SET s.etag = :etag, s.lastModified = :lastModified, s.contentHash = :contentHash WHERE s.id = :id")
+    int updateFetchValidators(@Param("id") Long id,
+                              @Param("etag") String etag,
+                              @Param("lastModified") String lastModified,
+                              @Param("contentHash") String contentHash);
+
+    // Only the columns the admin form edits; the bots and the re-extraction job write the others concurrently.
+    @Transactional
+    @Modifying
+    @Query("UPDATE Source s SET s.category = :category, s.url = :url, s.titleSelector = :titleSelector, " +
+            "s.contentSelector = :contentSelector, s.descriptionSelector = :descriptionSelector, " +
+            "s.imageSelector = :imageSelector, s.removalSelector = :removalSelector, s.crawlWeight = :crawlWeight, " +
+            "s.discoveryMode = :discoveryMode, s.discoveryUrl = :discoveryUrl, " +
+            "s.linkIncludePatterns = :linkIncludePatterns, s.linkExcludePatterns = :linkExcludePatterns, " +
+            "s.linkContainerSelector = :linkContainerSelector WHERE s.id = :id")
+    int updateSettings(@Param("id") Long id,
+                       @Param("category") Category category,
+                       @Param("url") String url,
+                       @Param("titleSelector") String titleSelector,
+                       @Param("contentSelector") String contentSelector,
+                       @Param("descriptionSelector") String descriptionSelector,
+                       @Param("imageSelector") String imageSelector,
+                       @Param("removalSelector") String removalSelector,
+                       @Param("crawlWeight") Integer crawlWeight,
+                       @Param("discoveryMode") Source.DiscoveryMode discoveryMode,
+                       @Param("discoveryUrl") String discoveryUrl,
+                       @Param("linkIncludePatterns") String linkIncludePatterns,
+                       @Param("linkExcludePatterns") String linkExcludePatterns,
+                       @Param("linkContainerSelector") String linkContainerSelector);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Source s SET s.etag = NULL, s.lastModified = NULL, s.contentHash = NULL, s.nextVisitAt = NULL, " +
+            "s.discoveryWatermark = NULL WHERE s.id = :id")
+    int resetDiscoveryState(@Param("id") Long id);
+
+    // Re-extraction restarts from the first post under the new version.
+    @Transactional
+    @Modifying
+    @Query("UPDATE Source s SET s.selectorVersion = COALESCE(s.selectorVersion, 0) + 1, s.reextractCursor = 0 " +
+            "WHERE s.id = :id")
+    int bumpSelectorVersion(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Source s SET s.lastVisitedAt = :visitedAt, s.nextVisitAt = :nextVisitAt, " +
+            "s.revisitIntervalSeconds = :intervalSeconds, s.yieldEwma = :yieldEwma WHERE s.id = :id")
+    int updateVisitSchedule(@Param("id") Long id,
+                            @Param("visitedAt") LocalDateTime visitedAt,
+                            @Param("nextVisitAt") LocalDateTime nextVisitAt,
+                            @Param("intervalSeconds") Integer intervalSeconds,
+                            @Param("yieldEwma") Double yieldEwma);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Source s SET s.reextractCursor = :cursor WHERE s.id = :id")
+    int updateReextractCursor(@Param("id") Long id, @Param("cursor") Long cursor);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Source s SET s.discoveryWatermark = :watermark WHERE s.id = :id")
+    int updateDiscoveryWatermark(@Param("id") Long id, @Param("watermark") LocalDateTime watermark);
 }
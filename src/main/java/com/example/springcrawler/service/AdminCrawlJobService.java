@@ -0,0 +1,307 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Post;
+import com.example.springcrawler.model.Source;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs crawls started from the admin page in the background, so the request thread returns at once with a
+ * job id. At most {@code max-concurrent} admin jobs run at a time; further submissions are refused rather
+ * than queued. Progress is pushed to subscribed pages as Server-Sent Events on a fixed tick, so a fast crawl
+ * does not turn into one event per page.
+ */
+@Service
+public class AdminCrawlJobService {
+    private static final Logger log = LoggerFactory.getLogger(AdminCrawlJobService.class);
+    private static final int RETAINED_FINISHED_JOBS = 20;
+    private static final int MAX_REPORTED_LINKS = 200;
+    private static final long EMITTER_TIMEOUT_MS = Duration.ofMinutes(30).toMillis();
+
+    private final SourceCrawlService sourceCrawlService;
+    private final Semaphore permits;
+    private final ExecutorService runner;
+    private final ScheduledExecutorService publisher;
+    private final AtomicLong nextId = new AtomicLong();
+
+    // Insertion ordered, so the oldest finished jobs are dropped first.
+    private final Map<Long, Job> jobs = new LinkedHashMap<>();
+
+    public AdminCrawlJobService(SourceCrawlService sourceCrawlService,
+                                @Value("${crawler.admin-jobs.max-concurrent:2}") int maxConcurrent,
+                                @Value("${crawler.admin-jobs.progress-interval-ms:500}") long progressIntervalMs) {
+        this.sourceCrawlService = sourceCrawlService;
+        this.permits = new Semaphore(Math.max(1, maxConcurrent));
+        this.runner = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "admin-crawl-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admin-crawl-job-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(100, progressIntervalMs);
+        publisher.scheduleWithFixedDelay(this::publishProgress, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Scan a source's listing page for new article links in the background. The fetch goes through the crawl
+     * executor, so it waits its turn behind the host's rate limit; the job's message says which phase it is in.
+     *
+     * @throws IllegalStateException if the admin job limit is reached
+     */
+    public JobSnapshot submitSourceScan(Source source, String categoryUrl, String siteUrl) {
+        Job job = register("source-scan", "Waiting for a fetch slot for " + categoryUrl);
+        return launch(job, () -> {
+            Set<String> links = sourceCrawlService.submitLinkScan(source, categoryUrl, siteUrl,
+                    () -> job.message = "Scanning " + categoryUrl).join().links();
+            job.pagesFetched.incrementAndGet();
+            job.meter.mark();
+            job.linksFound.addAndGet(links.size());
+            job.links = links.stream().limit(MAX_REPORTED_LINKS).toList();
+            job.message = links.size() + " new links queued from " + categoryUrl;
+        });
+    }
+
+    /**
+     * Crawl one batch of due UNCRAWL posts in the background.
+     *
+     * @throws IllegalStateException if the admin job limit is reached
+     */
+    public JobSnapshot submitPendingPosts() {
+        Job job = register("pending-posts", "Claiming UNCRAWL posts");
+        return launch(job, () -> {
+            int claimed = sourceCrawlService.crawlUnCrawlPost(new ArticleCrawlPipeline.PostListener() {
+                @Override
+                public void onPostDone(Post post, boolean crawled) {
+                    job.pagesFetched.incrementAndGet();
+                    job.meter.mark();
+                    if (!crawled) {
+                        job.errors.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void onPostParked(Post post) {
+                    job.parked.incrementAndGet();
+                }
+            });
+            job.linksFound.addAndGet(claimed);
+            job.message = claimed == 0 ? "No UNCRAWL posts are due."
+                    : job.parked.get() == 0 ? "Crawled a batch of " + claimed + " posts."
+                    : "Crawled a batch of " + claimed + " posts, " + job.parked.get() + " parked behind open circuits.";
+        });
+    }
+
+    public Optional<JobSnapshot> getJob(long id) {
+        synchronized (jobs) {
+            Job job = jobs.get(id);
+            return job != null ? Optional.of(job.snapshot()) : Optional.empty();
+        }
+    }
+
+    /**
+     * Stream a job's progress as {@code progress} events, ending with one {@code done} event.
+     *
+     * @return empty if the job is unknown or has already been dropped
+     */
+    public Optional<SseEmitter> subscribe(long id) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(id);
+        }
+        if (job == null) {
+            return Optional.empty();
+        }
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        emitter.onCompletion(() -> job.emitters.remove(emitter));
+        emitter.onTimeout(() -> job.emitters.remove(emitter));
+        emitter.onError(ex -> job.emitters.remove(emitter));
+        job.emitters.add(emitter);
+        // The job may already be over; the subscriber still gets its final state.
+        JobSnapshot snapshot = job.snapshot();
+        if (job.isFinished()) {
+            send(job, emitter, "done", snapshot);
+            emitter.complete();
+        } else {
+            send(job, emitter, "progress", snapshot);
+        }
+        return Optional.of(emitter);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.shutdownNow();
+        runner.shutdownNow();
+        synchronized (jobs) {
+            for (Job job : jobs.values()) {
+                job.emitters.forEach(SseEmitter::complete);
+                job.emitters.clear();
+            }
+        }
+    }
+
+    private Job register(String kind, String message) {
+        if (!permits.tryAcquire()) {
+            throw new IllegalStateException("Too many crawl jobs are running; wait for one to finish.");
+        }
+        Job job = new Job(nextId.incrementAndGet(), kind);
+        job.message = message;
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            pruneFinished();
+        }
+        return job;
+    }
+
+    private JobSnapshot launch(Job job, Runnable work) {
+        try {
+            runner.execute(() -> run(job, work));
+        } catch (RuntimeException ex) {
+            permits.release();
+            job.finish("failed", ex.getMessage());
+            throw ex;
+        }
+        return job.snapshot();
+    }
+
+    private void run(Job job, Runnable work) {
+        log.info("Admin crawl job {} ({}) started.", job.id, job.kind);
+        try {
+            work.run();
+            job.finish("done", job.message);
+        } catch (RuntimeException ex) {
+            log.error("Admin crawl job {} failed: {}", job.id, ex.getMessage());
+            job.errors.incrementAndGet();
+            job.finish("failed", ex.getMessage());
+        } finally {
+            permits.release();
+            log.info("Admin crawl job {} finished: {}", job.id, job.message);
+        }
+    }
+
+    private void publishProgress() {
+        List<Job> subscribed = new ArrayList<>();
+        synchronized (jobs) {
+            for (Job job : jobs.values()) {
+                if (!job.emitters.isEmpty()) {
+                    subscribed.add(job);
+                }
+            }
+        }
+        for (Job job : subscribed) {
+            boolean finished = job.isFinished();
+            JobSnapshot snapshot = job.snapshot();
+            for (SseEmitter emitter : job.emitters) {
+                if (finished) {
+                    send(job, emitter, "done", snapshot);
+                    emitter.complete();
+                } else {
+                    send(job, emitter, "progress", snapshot);
+                }
+            }
+            if (finished) {
+                job.emitters.clear();
+            }
+        }
+    }
+
+    // A closed browser tab shows up as a failed send; the emitter is dropped and the job carries on.
+    private void send(Job job, SseEmitter emitter, String event, JobSnapshot snapshot) {
+        try {
+            emitter.send(SseEmitter.event().name(event).id(Long.toString(job.id)).data(snapshot, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException ex) {
+            job.emitters.remove(emitter);
+            emitter.completeWithError(ex);
+        }
+    }
+
+    private void pruneFinished() {
+        int finished = 0;
+        for (Job job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (finished > RETAINED_FINISHED_JOBS && iterator.hasNext()) {
+            Job job = iterator.next();
+            if (job.isFinished() && job.emitters.isEmpty()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+
+    /**
+     * Progress of an admin job. {@code linksFound} is new links queued for a source scan and posts claimed for
+     * a pending-posts run, which end up either fetched or {@code parked} because their host's circuit is open;
+     * {@code links} is only filled for a finished source scan.
+     */
+    public record JobSnapshot(long id, String kind, String state, String message, int linksFound,
+                              int pagesFetched, int parked, int errors, double pagesPerSecond, long elapsedMs,
+                              List<String> links) {
+    }
+
+    private static final class Job {
+        private final long id;
+        private final String kind;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicInteger linksFound = new AtomicInteger();
+        private final AtomicInteger pagesFetched = new AtomicInteger();
+        private final AtomicInteger parked = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final ThroughputMeter meter = new ThroughputMeter(60);
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private volatile String state = "running";
+        private volatile String message;
+        private volatile List<String> links = List.of();
+        private volatile long finishedAt;
+
+        private Job(long id, String kind) {
+            this.id = id;
+            this.kind = kind;
+        }
+
+        private boolean isFinished() {
+            return finishedAt != 0;
+        }
+
+        private void finish(String state, String message) {
+            this.message = message;
+            this.state = state;
+            this.finishedAt = System.currentTimeMillis();
+        }
+
+        private JobSnapshot snapshot() {
+            long end = finishedAt != 0 ? finishedAt : System.currentTimeMillis();
+            return new JobSnapshot(id, kind, state, message, linksFound.get(), pagesFetched.get(), parked.get(),
+                    errors.get(), meter.getRatePerSecond(), end - startedAt, links);
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Post;
+import com.example.springcrawler.model.Source;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.jsoup.HttpStatusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes claimed posts in three stages connected by bounded queues:
+ * <ol>
+ *     <li>fetch: network I/O on the {@link CrawlExecutorService}, which applies the per-host limits;</li>
+ *     <li>parse: archiving the raw page, then parsing and extraction on a fork-join pool sized for the CPU;</li>
+ *     <li>persist: the {@link CrawlResultWriter}, which writes results behind in JDBC batches.</li>
+ * </ol>
+ * A full queue blocks the stage feeding it, so a slow database holds back parsing and a parse backlog holds
+ * back fetching instead of piling fetched pages up in memory. Failed fetches skip the parse stage and go
+ * straight to the writer, which records them for retry. Posts whose host has an open circuit in the
+ * {@link HostGuard} are parked until it is due to close, without being fetched or counted as an attempt.
+ * <p>
+ * Callers reserve a slot per post with {@link #reserveSlots(int)} before claiming it. There are as many slots as
+ * the fetch and parse stages can hold, so posts are only claimed (and their leases started) once there is room
+ * to work on them, and a slot frees up as soon as its post is handed to the writer.
+ */
+@Service
+public class ArticleCrawlPipeline {
+    private static final Logger log = LoggerFactory.getLogger(ArticleCrawlPipeline.class);
+    private static final int METER_WINDOW_SECONDS = 60;
+
+    private final CrawlExecutorService crawlExecutor;
+    private final CrawlHttpClient crawlHttpClient;
+    private final ArticleExtractor articleExtractor;
+    private final CrawlResultWriter resultWriter;
+    private final HtmlArchive htmlArchive;
+    private final HostGuard hostGuard;
+    private final RobotsTxtService robotsTxtService;
+    private final PostService postService;
+    private final UrlCanonicalizer urlCanonicalizer;
+
+    private final BlockingQueue<CrawlItem> parseQueue;
+    private final ForkJoinPool parsePool;
+    private final Semaphore parsePermits;
+    private final Semaphore slots;
+
+    private final ThroughputMeter fetchMeter = new ThroughputMeter(METER_WINDOW_SECONDS);
+    private final ThroughputMeter parseMeter = new ThroughputMeter(METER_WINDOW_SECONDS);
+    private final AtomicInteger fetchWaiting = new AtomicInteger();
+    private final AtomicInteger fetchActive = new AtomicInteger();
+    private final AtomicInteger parseActive = new AtomicInteger();
+    private final AtomicLong parkedCount = new AtomicLong();
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private Thread parseDispatcher;
+
+    public ArticleCrawlPipeline(CrawlExecutorService crawlExecutor,
+                                CrawlHttpClient crawlHttpClient,
+                                ArticleExtractor articleExtractor,
+                                CrawlResultWriter resultWriter,
+                                HtmlArchive htmlArchive,
+                                HostGuard hostGuard,
+                                RobotsTxtService robotsTxtService,
+                                PostService postService,
+                                UrlCanonicalizer urlCanonicalizer,
+                                @Value("${crawler.pipeline.parse-parallelism:0}") int parseParallelism,
+                                @Value("${crawler.pipeline.parse-queue-capacity:64}") int parseQueueCapacity) {
+        this.crawlExecutor = crawlExecutor;
+        this.crawlHttpClient = crawlHttpClient;
+        this.articleExtractor = articleExtractor;
+        this.resultWriter = resultWriter;
+        this.htmlArchive = htmlArchive;
+        this.hostGuard = hostGuard;
+        this.robotsTxtService = robotsTxtService;
+        this.postService = postService;
+        this.urlCanonicalizer = urlCanonicalizer;
+        int parallelism = parseParallelism > 0 ? parseParallelism : Runtime.getRuntime().availableProcessors();
+        this.parseQueue = new ArrayBlockingQueue<>(Math.max(1, parseQueueCapacity));
+        this.parsePool = new ForkJoinPool(parallelism);
+        // Only as many pages are handed to the pool as it has workers, so the backlog stays visible in parseQueue.
+        this.parsePermits = new Semaphore(parallelism);
+        this.slots = new Semaphore(crawlExecutor.getMaxConcurrency() + parseQueue.remainingCapacity() + parallelism);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        parseDispatcher = startStageThread(this::dispatchParseStage, "crawl-parse-dispatcher");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running.set(false);
+        if (parseDispatcher != null) {
+            parseDispatcher.interrupt();
+        }
+        parsePool.shutdownNow();
+        try {
+            parsePool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait until the pipeline has room for another post, then reserve as many slots as are free, up to {@code max}.
+     * Slots not used for a post must be given back with {@link #releaseSlots(int)}.
+     *
+     * @return the number of slots reserved, at least one
+     */
+    public int reserveSlots(int max) throws InterruptedException {
+        slots.acquire();
+        int reserved = 1;
+        while (reserved < max && slots.tryAcquire()) {
+            reserved++;
+        }
+        return reserved;
+    }
+
+    public void releaseSlots(int count) {
+        if (count > 0) {
+            slots.release(count);
+        }
+    }
+
+    /**
+     * Feed claimed posts into the pipeline, each holding a slot from {@link #reserveSlots(int)}; the pipeline
+     * releases the slot once the post reaches the writer, or earlier if it is dropped or parked.
+     *
+     * @return completes once every post has been saved or had its failure recorded
+     */
+    public CompletableFuture<Void> process(List<Post> posts) {
+        return process(posts, null);
+    }
+
+    /**
+     * Same as {@link #process(List)}, reporting each post to the listener once its outcome is written.
+     */
+    public CompletableFuture<Void> process(List<Post> posts, PostListener listener) {
+        List<CompletableFuture<Void>> pending = new ArrayList<>(posts.size());
+        Map<LocalDateTime, List<CrawlItem>> parked = new HashMap<>();
+        for (Post post : posts) {
+            String host = extractHost(fetchUrlOf(post));
+            CrawlItem item = new CrawlItem(post, listener, slots);
+            pending.add(item.done);
+            LocalDateTime blockedUntil = hostGuard.blockedUntil(host);
+            if (blockedUntil != null) {
+                parked.computeIfAbsent(blockedUntil, until -> new ArrayList<>()).add(item);
+                continue;
+            }
+            fetchWaiting.incrementAndGet();
+            crawlExecutor.submit(host, () -> {
+                fetch(item);
+                return null;
+            }).exceptionally(ex -> {
+                // Only reached if the hand-off itself was interrupted, or the executor shut down before the fetch
+                // started; the lease lets another claim retry it.
+                if (ex instanceof RejectedExecutionException || ex.getCause() instanceof RejectedExecutionException) {
+                    fetchWaiting.decrementAndGet();
+                }
+                item.finish(false);
+                return null;
+            });
+        }
+        parked.forEach(this::park);
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Fetch and archive a post's page again outside the claim and write flow, under the same robots.txt rules,
+     * per-host limits and circuit breaker as a crawl. Nothing about the post is written, so a failure leaves it
+     * as it was.
+     *
+     * @return completes with the page, or exceptionally if it is disallowed, its host's circuit is open or the
+     * fetch fails
+     */
+    public CompletableFuture<CrawlHttpClient.FetchResult> refetch(Post post, Source source) {
+        String url = fetchUrlOf(post);
+        String host = extractHost(url);
+        if (hostGuard.blockedUntil(host) != null) {
+            return CompletableFuture.failedFuture(new IOException("Circuit open for " + host));
+        }
+        return crawlExecutor.submit(host, () -> {
+            if (!robotsTxtService.isAllowed(url)) {
+                robotsTxtService.recordDisallowed(1);
+                throw new IOException("Disallowed by robots.txt: " + url);
+            }
+            if (hostGuard.tryPass(host) != null) {
+                throw new IOException("Circuit open for " + host);
+            }
+            CrawlHttpClient.FetchResult result;
+            try {
+                result = crawlHttpClient.fetch(url, source);
+                hostGuard.recordSuccess(host);
+                crawlExecutor.recordPageFetched();
+            } catch (IOException e) {
+                if (isHostFailure(e)) {
+                    hostGuard.recordFailure(host);
+                } else {
+                    hostGuard.recordSuccess(host);
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                hostGuard.release(host);
+                throw e;
+            }
+            archive(post.getId(), result);
+            return result;
+        });
+    }
+
+    /**
+     * Posts released unfetched because their host's circuit was open.
+     */
+    public long getParkedCount() {
+        return parkedCount.get();
+    }
+
+    /**
+     * Results the writer dropped because the post's lease had passed to another worker or its status changed.
+     */
+    public long getStaleResultCount() {
+        return resultWriter.getStaleCount();
+    }
+
+    public List<StageStats> getStageStats() {
+        return List.of(
+                new StageStats("fetch", fetchWaiting.get(), fetchActive.get(), fetchMeter.getTotal(), fetchMeter.getRatePerSecond()),
+                new StageStats("parse", parseQueue.size(), parseActive.get(), parseMeter.getTotal(), parseMeter.getRatePerSecond()),
+                new StageStats("persist", resultWriter.getQueueDepth(), resultWriter.getFlushingCount(),
+                        resultWriter.getWrittenCount(), resultWriter.getWritesPerSecond()));
+    }
+
+    private void fetch(CrawlItem item) throws InterruptedException {
+        fetchWaiting.decrementAndGet();
+        Post post = item.post;
+        String url = fetchUrlOf(post);
+        String host = extractHost(url);
+        // Rows queued before robots.txt was honoured, or before the site changed it, are not fetched.
+        if (!robotsTxtService.isAllowed(url)) {
+            robotsTxtService.recordDisallowed(1);
+            item.fail(new IOException("Disallowed by robots.txt: " + url), true);
+            handOff(item);
+            return;
+        }
+        // The circuit may have opened while this post was queued behind the ones that tripped it.
+        LocalDateTime blockedUntil = hostGuard.tryPass(host);
+        if (blockedUntil != null) {
+            park(blockedUntil, List.of(item));
+            return;
+        }
+        fetchActive.incrementAndGet();
+        try {
+            if (!StringUtils.hasText(post.getSourceUrl()) && StringUtils.hasText(post.getCrawlUrl())) {
+                post.setSourceUrl(post.getCrawlUrl());
+            }
+            item.result = crawlHttpClient.fetch(url, post.getSource());
+            hostGuard.recordSuccess(host);
+            crawlExecutor.recordPageFetched();
+        } catch (IOException e) {
+            item.fail(e, isPermanentFailure(e));
+            if (isHostFailure(e)) {
+                hostGuard.recordFailure(host);
+            } else {
+                hostGuard.recordSuccess(host);
+            }
+        } catch (RuntimeException e) {
+            item.fail(e, false);
+            hostGuard.release(host);
+        } finally {
+            fetchActive.decrementAndGet();
+            fetchMeter.mark();
+        }
+        // Blocking here keeps the executor slot busy, which is what throttles fetching when parsing falls behind.
+        if (item.error != null) {
+            handOff(item);
+        } else {
+            parseQueue.put(item);
+        }
+    }
+
+    private void dispatchParseStage() {
+        while (running.get()) {
+            try {
+                CrawlItem item = parseQueue.take();
+                parsePermits.acquire();
+                parsePool.execute(() -> {
+                    try {
+                        parse(item);
+                    } finally {
+                        parsePermits.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void parse(CrawlItem item) {
+        parseActive.incrementAndGet();
+        try {
+            archive(item.post.getId(), item.result);
+            ArticleExtractor.ExtractedArticle article = articleExtractor.extract(item.result, item.post.getSource());
+            Post post = item.post;
+            // Fields the page does not yield keep what the feed or sitemap pre-filled at discovery.
+            // Same limits discovery applies: titles are cut to the column, overlong image URLs are dropped.
+            if (StringUtils.hasText(article.title())) {
+                post.setTitle(PostService.truncate(article.title(), PostService.MAX_VARCHAR));
+            }
+            post.setContent(article.content());
+            if (StringUtils.hasText(article.shortDescription())) {
+                post.setShortDescription(article.shortDescription());
+            }
+            if (StringUtils.hasText(article.imageUrl()) && article.imageUrl().length() <= PostService.MAX_VARCHAR) {
+                post.setImgUrl(article.imageUrl());
+            }
+            post.setCanonicalUrl(canonicalOf(post, article.canonicalUrl()));
+            // The claim stays on the post until the writer has used it to fence the update.
+            post.setStatus(Post.Status.CRAWLED);
+            post.setLastError(null);
+            post.setNextAttemptAt(null);
+        } catch (IOException | RuntimeException e) {
+            item.fail(e, false);
+        } finally {
+            // The raw body is not needed past this point; drop it before the post is buffered for writing.
+            item.result = null;
+            parseActive.decrementAndGet();
+            parseMeter.mark();
+        }
+        try {
+            handOff(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            item.finish(false);
+        }
+    }
+
+    // Only kept when it names another URL; a canonical pointing at the page itself adds nothing to dedup.
+    private String canonicalOf(Post post, String declared) {
+        String canonical = urlCanonicalizer.canonicalize(declared);
+        if (canonical == null || canonical.length() > PostService.MAX_VARCHAR || canonical.equals(post.getCrawlUrl())) {
+            return null;
+        }
+        return canonical;
+    }
+
+    // Archiving is best effort; a full disk must not fail the crawl itself.
+    private void archive(Long postId, CrawlHttpClient.FetchResult result) {
+        try {
+            htmlArchive.store(postId, result);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not archive HTML for post {}: {}", postId, ex.getMessage());
+        }
+    }
+
+    private void handOff(CrawlItem item) throws InterruptedException {
+        CompletableFuture<Void> written = item.error == null
+                ? resultWriter.submitCrawled(item.post)
+                : resultWriter.submitFailure(item.post, item.error, item.permanent);
+        // The writer's own bounded queue holds back further hand-offs; the slot need not wait for the flush.
+        item.releaseSlot();
+        written.whenComplete((ignored, ex) -> item.finish(item.error == null && ex == null));
+    }
+
+    // Parking is best effort; if it fails the lease runs out and the posts are claimed again anyway.
+    private void park(LocalDateTime until, List<CrawlItem> items) {
+        List<Long> ids = new ArrayList<>(items.size());
+        for (CrawlItem item : items) {
+            ids.add(item.post.getId());
+        }
+        try {
+            parkedCount.addAndGet(postService.parkPosts(ids, until));
+        } catch (RuntimeException ex) {
+            log.warn("Could not park {} posts until {}: {}", ids.size(), until, ex.getMessage());
+        }
+        items.forEach(CrawlItem::finishParked);
+    }
+
+    // Timeouts, refused connections, 5xx and 429 say the host is struggling; other 4xx are about the page.
+    private boolean isHostFailure(IOException error) {
+        if (error instanceof HttpStatusException statusError) {
+            int status = statusError.getStatusCode();
+            return status >= 500 || status == 429;
+        }
+        return error instanceof HttpTimeoutException
+                || error instanceof SocketTimeoutException
+                || error instanceof SocketException
+                || error instanceof UnknownHostException
+                || error instanceof EOFException;
+    }
+
+    // 404 and 410 will not fix themselves; everything else (timeouts, 5xx, 429) is worth retrying.
+    private boolean isPermanentFailure(IOException error) {
+        if (error instanceof HttpStatusException statusError) {
+            int status = statusError.getStatusCode();
+            return status == 404 || status == 410;
+        }
+        return false;
+    }
+
+    private Thread startStageThread(Runnable task, String threadName) {
+        Thread thread = new Thread(task, threadName);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // crawl_url is the canonical key and may have been switched to https; source_url is the link as it was
+    // found, which is what the publisher actually serves. Rows without a source_url fall back to crawl_url.
+    private String fetchUrlOf(Post post) {
+        return StringUtils.hasText(post.getSourceUrl()) ? post.getSourceUrl().trim() : post.getCrawlUrl();
+    }
+
+    private String extractHost(String url) {
+        if (!StringUtils.hasText(url)) {
+            return null;
+        }
+        try {
+            return new URI(url.trim()).getHost();
+        } catch (URISyntaxException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Snapshot of one stage: items waiting in front of it, items it is working on, and its output rate.
+     */
+    public record StageStats(String name, int queueDepth, int active, long processed, double perSecond) {
+
+        public String getRate() {
+            return String.format("%.2f", perSecond);
+        }
+    }
+
+    /**
+     * Told about every post once the pipeline is done with it; called from pipeline threads, so it must not block.
+     */
+    @FunctionalInterface
+    public interface PostListener {
+        void onPostDone(Post post, boolean crawled);
+
+        /**
+         * The post was released unfetched because its host's circuit is open; it is claimed again later.
+         * By default it is reported as not crawled.
+         */
+        default void onPostParked(Post post) {
+            onPostDone(post, false);
+        }
+    }
+
+    private static final class CrawlItem {
+        private final Post post;
+        private final PostListener listener;
+        private final Semaphore slots;
+        private final AtomicBoolean slotHeld = new AtomicBoolean(true);
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile CrawlHttpClient.FetchResult result;
+        private volatile Exception error;
+        private volatile boolean permanent;
+
+        private CrawlItem(Post post, PostListener listener, Semaphore slots) {
+            this.post = post;
+            this.listener = listener;
+            this.slots = slots;
+        }
+
+        private void releaseSlot() {
+            if (slotHeld.compareAndSet(true, false)) {
+                slots.release();
+            }
+        }
+
+        private void fail(Exception error, boolean permanent) {
+            this.error = error;
+            this.permanent = permanent;
+        }
+
+        private void finish(boolean crawled) {
+            releaseSlot();
+            notifyListener(() -> listener.onPostDone(post, crawled));
+            done.complete(null);
+        }
+
+        private void finishParked() {
+            releaseSlot();
+            notifyListener(() -> listener.onPostParked(post));
+            done.complete(null);
+        }
+
+        private void notifyListener(Runnable call) {
+            if (listener != null) {
+                try {
+                    call.run();
+                } catch (RuntimeException ex) {
+                    log.warn("Post listener failed for post {}: {}", post.getId(), ex.getMessage());
+                }
+            }
+        }
+    }
+}
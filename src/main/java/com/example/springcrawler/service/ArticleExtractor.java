@@ -0,0 +1,307 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Source;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Applies a source's selectors to a fetched article page. Pure CPU work with no I/O, so the crawl pipeline
+ * can run it on its parse pool. Selectors come precompiled from the {@link SelectorRegistry}.
+ * <p>
+ * In streaming mode the page is fed through Jsoup's {@link StreamParser} and parsing stops as soon as every
+ * configured selector has a complete match, so comments, related-article lists and trailing scripts are
+ * never turned into nodes. The body size itself is already capped by {@link CrawlHttpClient}.
+ * <p>
+ * With metadata-first extraction, title, description and image are taken from the page head when the
+ * {@link ArticleMetadataReader} finds them there, and the source's selectors only run for what is missing.
+ */
+@Component
+public class ArticleExtractor {
+    private static final int CHARSET_SNIFF_BYTES = 1024;
+    private static final int TITLE = 0;
+    private static final int CONTENT = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int IMAGE = 3;
+
+    private final SelectorRegistry selectorRegistry;
+    private final CrawlHttpClient crawlHttpClient;
+    private final ArticleMetadataReader metadataReader;
+    private final boolean streaming;
+    private final boolean metadataFirst;
+
+    private final LongAdder streamedPages = new LongAdder();
+    private final LongAdder streamedBytesRead = new LongAdder();
+    private final LongAdder streamedBytesTotal = new LongAdder();
+
+    public ArticleExtractor(SelectorRegistry selectorRegistry,
+                            CrawlHttpClient crawlHttpClient,
+                            ArticleMetadataReader metadataReader,
+                            @Value("${crawler.extract.streaming:true}") boolean streaming,
+                            @Value("${crawler.extract.metadata-first:true}") boolean metadataFirst) {
+        this.selectorRegistry = selectorRegistry;
+        this.crawlHttpClient = crawlHttpClient;
+        this.metadataReader = metadataReader;
+        this.streaming = streaming;
+        this.metadataFirst = metadataFirst;
+    }
+
+    public ExtractedArticle extract(CrawlHttpClient.FetchResult result, Source source) throws IOException {
+        if (!streaming) {
+            return extract(crawlHttpClient.parse(result), source);
+        }
+        return extractStreaming(result, source);
+    }
+
+    public ExtractedArticle extract(Document doc, Source source) {
+        SelectorRegistry.CompiledSelectors selectors = selectorRegistry.forSource(source);
+        ArticleMetadataReader.ArticleMetadata metadata = readMetadata(doc.head(), source);
+
+        Element titleElement = metadata.title() == null ? selectFirst(doc, selectors.title()) : null;
+        Element contentElement = selectFirst(doc, selectors.content());
+        Element descriptionElement = metadata.description() == null ? selectFirst(doc, selectors.description()) : null;
+        Element imageElement = metadata.imageUrl() == null ? selectFirst(doc, selectors.image()) : null;
+
+        return toArticle(metadata, metadataReader.readCanonical(doc.head()), titleElement, contentElement,
+                descriptionElement, imageElement, selectors.removal());
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public long getStreamedPages() {
+        return streamedPages.sum();
+    }
+
+    /**
+     * Share of the fetched bytes the streaming parser actually had to read, across all streamed pages.
+     */
+    public double getStreamedInputFraction() {
+        long total = streamedBytesTotal.sum();
+        return total > 0 ? (double) streamedBytesRead.sum() / total : 0;
+    }
+
+    private ExtractedArticle extractStreaming(CrawlHttpClient.FetchResult result, Source source) throws IOException {
+        SelectorRegistry.CompiledSelectors selectors = selectorRegistry.forSource(source);
+        Evaluator[] evaluators = {selectors.title(), selectors.content(), selectors.description(), selectors.image()};
+        Element[] found = new Element[evaluators.length];
+        ArticleMetadataReader.ArticleMetadata metadata = null;
+        String canonicalUrl = null;
+
+        byte[] body = result.body();
+        int bomLength = bomLength(body);
+        PositionedInput input = new PositionedInput(body, bomLength);
+        try (StreamParser streamer = new StreamParser(Parser.htmlParser())) {
+            streamer.parse(new InputStreamReader(input, resolveCharset(result, body, bomLength)), result.uri().toString());
+            Document doc = streamer.document();
+            @SuppressWarnings("unchecked")
+            Predicate<Element>[] matchers = new Predicate[evaluators.length];
+            for (int i = 0; i < evaluators.length; i++) {
+                matchers[i] = evaluators[i] != null ? evaluators[i].asPredicate(doc) : null;
+            }
+
+            // Elements arrive once their end tag is parsed, children before parents.
+            Iterator<Element> completed = streamer.iterator();
+            while (completed.hasNext()) {
+                Element element = completed.next();
+                if (metadata == null && metadataFirst && "head".equals(element.normalName())) {
+                    metadata = readMetadata(element, source);
+                    // Fields the head already provides no longer need a body match.
+                    dropIfPresent(metadata.title(), TITLE, matchers, found);
+                    dropIfPresent(metadata.description(), DESCRIPTION, matchers, found);
+                    dropIfPresent(metadata.imageUrl(), IMAGE, matchers, found);
+                    continue;
+                }
+                boolean matched = false;
+                for (int i = 0; i < matchers.length; i++) {
+                    if (matchers[i] == null || !matchers[i].test(element)) {
+                        continue;
+                    }
+                    // A later match only wins if it encloses the current one, i.e. comes first in document order.
+                    if (found[i] == null || found[i].parents().contains(element)) {
+                        found[i] = element;
+                        matched = true;
+                    }
+                }
+                if (matched && allSettled(found, matchers)) {
+                    streamer.stop();
+                    break;
+                }
+            }
+            if (metadata == null) {
+                metadata = readMetadata(doc.head(), source);
+            }
+            canonicalUrl = metadataReader.readCanonical(doc.head());
+        }
+        streamedPages.increment();
+        streamedBytesRead.add(input.position());
+        streamedBytesTotal.add(body.length);
+
+        return toArticle(metadata, canonicalUrl, found[TITLE], found[CONTENT], found[DESCRIPTION], found[IMAGE],
+                selectors.removal());
+    }
+
+    private ArticleMetadataReader.ArticleMetadata readMetadata(Element head, Source source) {
+        if (!metadataFirst) {
+            return ArticleMetadataReader.ArticleMetadata.EMPTY;
+        }
+        ArticleMetadataReader.ArticleMetadata metadata = metadataReader.read(head);
+        metadataReader.recordHits(source, metadata);
+        return metadata;
+    }
+
+    private void dropIfPresent(String value, int field, Predicate<Element>[] matchers, Element[] found) {
+        if (value != null) {
+            matchers[field] = null;
+            found[field] = null;
+        }
+    }
+
+    // Settled once every selector has a match that no still-open ancestor could replace.
+    private boolean allSettled(Element[] found, Predicate<Element>[] matchers) {
+        for (int i = 0; i < matchers.length; i++) {
+            if (matchers[i] == null) {
+                continue;
+            }
+            if (found[i] == null) {
+                return false;
+            }
+            for (Element parent = found[i].parent(); parent != null; parent = parent.parent()) {
+                if (matchers[i].test(parent)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private ExtractedArticle toArticle(ArticleMetadataReader.ArticleMetadata metadata,
+                                       String canonicalUrl,
+                                       Element titleElement,
+                                       Element contentElement,
+                                       Element descriptionElement,
+                                       Element imageElement,
+                                       Evaluator removal) {
+        if (contentElement != null && removal != null) {
+            contentElement.select(removal).remove();
+        }
+
+        return new ExtractedArticle(
+                metadata.title() != null ? metadata.title() : titleElement != null ? titleElement.text() : null,
+                contentElement != null ? contentElement.text() : null,
+                metadata.description() != null ? metadata.description()
+                        : descriptionElement != null ? descriptionElement.text() : null,
+                metadata.imageUrl() != null ? metadata.imageUrl() : extractImageUrl(imageElement),
+                canonicalUrl);
+    }
+
+    private Element selectFirst(Document document, Evaluator evaluator) {
+        if (document == null || evaluator == null) {
+            return null;
+        }
+        return document.selectFirst(evaluator);
+    }
+
+    private String extractImageUrl(Element img) {
+        if (img != null) {
+            if (img.hasAttr("data-src")) {
+                return img.attr("data-src");
+            } else if (img.hasAttr("data-original")) {
+                return img.attr("data-original");
+            } else if (img.hasAttr("src")) {
+                return img.attr("src");
+            }
+        }
+
+        return null;
+    }
+
+    // The full DOM path lets Jsoup sniff the charset; the streaming reader needs it up front.
+    private Charset resolveCharset(CrawlHttpClient.FetchResult result, byte[] body, int bomLength) {
+        if (bomLength == 3) {
+            return StandardCharsets.UTF_8;
+        }
+        if (bomLength == 2) {
+            return (body[0] & 0xFF) == 0xFE ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE;
+        }
+        Charset declared = toCharset(result.charset());
+        if (declared != null) {
+            return declared;
+        }
+        String head = new String(body, 0, Math.min(body.length, CHARSET_SNIFF_BYTES), StandardCharsets.ISO_8859_1)
+                .toLowerCase(Locale.ROOT);
+        int index = head.indexOf("charset=");
+        if (index >= 0) {
+            int start = index + 8;
+            while (start < head.length() && (head.charAt(start) == '"' || head.charAt(start) == '\'')) {
+                start++;
+            }
+            int end = start;
+            while (end < head.length() && (Character.isLetterOrDigit(head.charAt(end)) || "-_.:".indexOf(head.charAt(end)) >= 0)) {
+                end++;
+            }
+            Charset sniffed = toCharset(head.substring(start, end));
+            if (sniffed != null) {
+                return sniffed;
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private Charset toCharset(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        try {
+            return Charset.forName(name.trim());
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ex) {
+            return null;
+        }
+    }
+
+    private int bomLength(byte[] body) {
+        if (body.length >= 3 && (body[0] & 0xFF) == 0xEF && (body[1] & 0xFF) == 0xBB && (body[2] & 0xFF) == 0xBF) {
+            return 3;
+        }
+        if (body.length >= 2 && ((body[0] & 0xFF) == 0xFE && (body[1] & 0xFF) == 0xFF
+                || (body[0] & 0xFF) == 0xFF && (body[1] & 0xFF) == 0xFE)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * {@code canonicalUrl} is the page's {@code rel=canonical} as declared, not yet canonicalized.
+     */
+    public record ExtractedArticle(String title, String content, String shortDescription, String imageUrl,
+                                   String canonicalUrl) {
+    }
+
+    private static final class PositionedInput extends ByteArrayInputStream {
+
+        private PositionedInput(byte[] body, int offset) {
+            super(body, offset, body.length - offset);
+        }
+
+        private int position() {
+            return pos;
+        }
+    }
+}
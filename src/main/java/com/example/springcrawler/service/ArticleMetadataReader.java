@@ -0,0 +1,245 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Source;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads title, description and lead image from a page's {@code <head>}: OpenGraph tags first, then a
+ * JSON-LD article block, then the Twitter card and plain description tags. Keeps per-source hit counts
+ * so the admin page can show how often the body selectors were not needed.
+ */
+@Component
+public class ArticleMetadataReader {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Set<String> ARTICLE_TYPES = Set.of("NewsArticle", "Article", "ReportageNewsArticle",
+            "AnalysisNewsArticle", "BlogPosting");
+    private static final Evaluator OG_TITLE = QueryParser.parse("meta[property=og:title]");
+    private static final Evaluator OG_DESCRIPTION = QueryParser.parse("meta[property=og:description]");
+    private static final Evaluator OG_IMAGE = QueryParser.parse("meta[property=og:image]");
+    private static final Evaluator TWITTER_TITLE = QueryParser.parse("meta[name=twitter:title]");
+    private static final Evaluator TWITTER_IMAGE = QueryParser.parse("meta[name=twitter:image]");
+    private static final Evaluator META_DESCRIPTION = QueryParser.parse("meta[name=description]");
+    private static final Evaluator JSON_LD = QueryParser.parse("script[type=application/ld+json]");
+    private static final Evaluator CANONICAL = QueryParser.parse("link[rel=canonical][href]");
+
+    private final Map<Long, SourceCounters> counters = new ConcurrentHashMap<>();
+
+    public ArticleMetadata read(Element head) {
+        if (head == null) {
+            return ArticleMetadata.EMPTY;
+        }
+        JsonNode article = findJsonLdArticle(head);
+        String title = firstText(
+                metaContent(head, OG_TITLE),
+                jsonText(article, "headline"),
+                metaContent(head, TWITTER_TITLE));
+        String description = firstText(
+                metaContent(head, OG_DESCRIPTION),
+                jsonText(article, "description"),
+                metaContent(head, META_DESCRIPTION));
+        String image = firstText(
+                metaUrl(head, OG_IMAGE),
+                jsonImage(head, article),
+                metaUrl(head, TWITTER_IMAGE));
+        return new ArticleMetadata(title, description, image);
+    }
+
+    /**
+     * The absolute {@code rel=canonical} URL the page declares, or null. Read whether or not metadata-first
+     * extraction is on, since it only feeds deduplication.
+     */
+    public String readCanonical(Element head) {
+        if (head == null) {
+            return null;
+        }
+        Element link = head.selectFirst(CANONICAL);
+        return link != null ? trimToNull(link.absUrl("href")) : null;
+    }
+
+    public void recordHits(Source source, ArticleMetadata metadata) {
+        if (source == null || source.getId() == null) {
+            return;
+        }
+        SourceCounters counter = counters.computeIfAbsent(source.getId(), id -> new SourceCounters());
+        counter.pages.increment();
+        if (metadata.title() != null) {
+            counter.titleHits.increment();
+        }
+        if (metadata.description() != null) {
+            counter.descriptionHits.increment();
+        }
+        if (metadata.imageUrl() != null) {
+            counter.imageHits.increment();
+        }
+    }
+
+    public List<SourceHitRate> getHitRates() {
+        List<SourceHitRate> rates = new ArrayList<>(counters.size());
+        counters.forEach((sourceId, counter) -> {
+            long pages = counter.pages.sum();
+            if (pages > 0) {
+                rates.add(new SourceHitRate(sourceId, pages,
+                        percent(counter.titleHits.sum(), pages),
+                        percent(counter.descriptionHits.sum(), pages),
+                        percent(counter.imageHits.sum(), pages)));
+            }
+        });
+        rates.sort(Comparator.comparing(SourceHitRate::sourceId));
+        return rates;
+    }
+
+    private String metaContent(Element head, Evaluator query) {
+        Element meta = head.selectFirst(query);
+        return meta != null ? trimToNull(meta.attr("content")) : null;
+    }
+
+    private String metaUrl(Element head, Evaluator query) {
+        Element meta = head.selectFirst(query);
+        if (meta == null) {
+            return null;
+        }
+        String absolute = trimToNull(meta.absUrl("content"));
+        return absolute != null ? absolute : trimToNull(meta.attr("content"));
+    }
+
+    private JsonNode findJsonLdArticle(Element head) {
+        for (Element script : head.select(JSON_LD)) {
+            try {
+                JsonNode article = findArticleNode(JSON.readTree(script.data()));
+                if (article != null) {
+                    return article;
+                }
+            } catch (JsonProcessingException ex) {
+                // Broken JSON-LD is common; the OpenGraph and selector tiers still apply.
+            }
+        }
+        return null;
+    }
+
+    private JsonNode findArticleNode(JsonNode node) {
+        if (node == null) {
+            return null;
+        }
+        if (node.isArray()) {
+            for (JsonNode item : node) {
+                JsonNode found = findArticleNode(item);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+        if (!node.isObject()) {
+            return null;
+        }
+        if (isArticleType(node.get("@type"))) {
+            return node;
+        }
+        return findArticleNode(node.get("@graph"));
+    }
+
+    private boolean isArticleType(JsonNode type) {
+        if (type == null) {
+            return false;
+        }
+        if (type.isArray()) {
+            for (JsonNode item : type) {
+                if (ARTICLE_TYPES.contains(item.asText())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return ARTICLE_TYPES.contains(type.asText());
+    }
+
+    private String jsonText(JsonNode article, String field) {
+        if (article == null) {
+            return null;
+        }
+        JsonNode value = article.get(field);
+        return value != null && value.isTextual() ? trimToNull(value.asText()) : null;
+    }
+
+    // "image" may be a URL, an ImageObject, or a list of either; relative URLs are resolved like the meta tags'.
+    private String jsonImage(Element head, JsonNode article) {
+        JsonNode image = article != null ? article.get("image") : null;
+        if (image != null && image.isArray()) {
+            image = image.size() > 0 ? image.get(0) : null;
+        }
+        if (image == null) {
+            return null;
+        }
+        if (image.isTextual()) {
+            return resolve(head, trimToNull(image.asText()));
+        }
+        JsonNode url = image.get("url");
+        return url != null && url.isTextual() ? resolve(head, trimToNull(url.asText())) : null;
+    }
+
+    private String resolve(Element head, String url) {
+        if (url == null || !StringUtils.hasText(head.baseUri())) {
+            return url;
+        }
+        try {
+            return new URI(head.baseUri()).resolve(url).toString();
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return url;
+        }
+    }
+
+    private String firstText(String... candidates) {
+        for (String candidate : candidates) {
+            if (candidate != null) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private String trimToNull(String value) {
+        return StringUtils.hasText(value) ? value.trim() : null;
+    }
+
+    private double percent(long hits, long pages) {
+        return hits * 100.0 / pages;
+    }
+
+    /**
+     * Fields found in the head; null means the body selector still has to provide it.
+     */
+    public record ArticleMetadata(String title, String description, String imageUrl) {
+        static final ArticleMetadata EMPTY = new ArticleMetadata(null, null, null);
+    }
+
+    public record SourceHitRate(Long sourceId, long pages, double titlePercent, double descriptionPercent, double imagePercent) {
+
+        public String format(double percent) {
+            return String.format("%.1f%%", percent);
+        }
+    }
+
+    private static final class SourceCounters {
+        private final LongAdder pages = new LongAdder();
+        private final LongAdder titleHits = new LongAdder();
+        private final LongAdder descriptionHits = new LongAdder();
+        private final LongAdder imageHits = new LongAdder();
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.springcrawler.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs crawl fetches concurrently across hosts while capping how many requests hit the same host at once.
+ * Tasks for a busy host wait in that host's queue instead of occupying a worker thread, and hosts with
+ * pending work are served round-robin so one large site cannot starve the others. A host that has used up
+ * its {@link HostGuard} token bucket is set aside until its next token is due, and the workers move on to
+ * other hosts in the meantime.
+ */
+@Service
+public class CrawlExecutorService {
+    private static final Logger log = LoggerFactory.getLogger(CrawlExecutorService.class);
+
+    private final int maxConcurrency;
+    private final int perHostConcurrency;
+    private final ExecutorService workers;
+    private final HostGuard hostGuard;
+    private final ScheduledExecutorService throttleTimer;
+    private final ThroughputMeter pagesMeter = new ThroughputMeter(60);
+
+    private final Object lock = new Object();
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final Deque<HostQueue> runnableHosts = new ArrayDeque<>();
+    private int active;
+    private int throttledHosts;
+
+    public CrawlExecutorService(HostGuard hostGuard,
+                                @Value("${crawler.executor.max-concurrency:32}") int maxConcurrency,
+                                @Value("${crawler.executor.per-host-concurrency:2}") int perHostConcurrency,
+                                @Value("${crawler.executor.virtual-threads:true}") boolean virtualThreads) {
+        this.hostGuard = hostGuard;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.perHostConcurrency = Math.max(1, perHostConcurrency);
+        this.workers = createWorkers(this.maxConcurrency, virtualThreads);
+        this.throttleTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawl-host-throttle");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a fetch for {@code host}. The task starts as soon as both the global and the per-host limits allow.
+     * If the executor shuts down before it runs, the future completes with a {@link RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> submit(String host, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        String key = host != null ? host.toLowerCase() : "";
+        synchronized (lock) {
+            if (workers.isShutdown()) {
+                future.completeExceptionally(new RejectedExecutionException("Crawl executor is shut down"));
+                return future;
+            }
+            HostQueue queue = hosts.computeIfAbsent(key, HostQueue::new);
+            queue.pending.addLast(new QueuedTask(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            }, future::completeExceptionally));
+            markRunnable(queue);
+            dispatch();
+        }
+        return future;
+    }
+
+    /**
+     * Count a page fetched for the pages/sec figure. Called by the crawl once a page has actually been
+     * downloaded, so listing scans and posts skipped for robots.txt or an open circuit do not count.
+     */
+    public void recordPageFetched() {
+        pagesMeter.mark();
+    }
+
+    public double getPagesPerSecond() {
+        return pagesMeter.getRatePerSecond();
+    }
+
+    public long getPagesFetched() {
+        return pagesMeter.getTotal();
+    }
+
+    public int getActiveCount() {
+        synchronized (lock) {
+            return active;
+        }
+    }
+
+    public int getQueuedCount() {
+        synchronized (lock) {
+            int queued = 0;
+            for (HostQueue queue : hosts.values()) {
+                queued += queue.pending.size();
+            }
+            return queued;
+        }
+    }
+
+    /**
+     * Hosts with queued work that are waiting for their next rate-limit token.
+     */
+    public int getThrottledHostCount() {
+        synchronized (lock) {
+            return throttledHosts;
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getPerHostConcurrency() {
+        return perHostConcurrency;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        throttleTimer.shutdownNow();
+        workers.shutdownNow();
+        synchronized (lock) {
+            abandonPending(new RejectedExecutionException("Crawl executor is shut down"));
+        }
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Caller must hold lock.
+    private void dispatch() {
+        while (active < maxConcurrency && !runnableHosts.isEmpty()) {
+            HostQueue queue = runnableHosts.pollFirst();
+            queue.scheduled = false;
+            if (queue.pending.isEmpty()) {
+                continue;
+            }
+            long waitNanos = hostGuard.reserve(queue.host);
+            if (waitNanos > 0) {
+                throttle(queue, waitNanos);
+                continue;
+            }
+            QueuedTask task = queue.pending.pollFirst();
+            queue.active++;
+            active++;
+            markRunnable(queue);
+            try {
+                workers.execute(() -> runTask(queue, task));
+            } catch (RejectedExecutionException ex) {
+                // Shutting down: nothing queued will run any more, so callers waiting on it are released.
+                queue.active--;
+                active--;
+                task.fail().accept(ex);
+                abandonPending(ex);
+                return;
+            }
+        }
+    }
+
+    // Caller must hold lock.
+    private void abandonPending(RejectedExecutionException ex) {
+        for (HostQueue queue : hosts.values()) {
+            QueuedTask task;
+            while ((task = queue.pending.pollFirst()) != null) {
+                task.fail().accept(ex);
+            }
+        }
+        runnableHosts.clear();
+    }
+
+    // Caller must hold lock.
+    private void throttle(HostQueue queue, long waitNanos) {
+        queue.throttled = true;
+        throttledHosts++;
+        try {
+            throttleTimer.schedule(() -> {
+                synchronized (lock) {
+                    queue.throttled = false;
+                    throttledHosts--;
+                    markRunnable(queue);
+                    dispatch();
+                }
+            }, waitNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ex) {
+            // Shutting down; the queued tasks are abandoned along with the workers.
+            queue.throttled = false;
+            throttledHosts--;
+            abandonPending(ex);
+        }
+    }
+
+    // Caller must hold lock.
+    private void markRunnable(HostQueue queue) {
+        if (!queue.scheduled && !queue.throttled && !queue.pending.isEmpty() && queue.active < perHostConcurrency) {
+            queue.scheduled = true;
+            runnableHosts.addLast(queue);
+        }
+    }
+
+    private void runTask(HostQueue queue, QueuedTask task) {
+        try {
+            task.run().run();
+        } finally {
+            synchronized (lock) {
+                queue.active--;
+                active--;
+                if (queue.active == 0 && queue.pending.isEmpty() && !queue.throttled) {
+                    hosts.remove(queue.host);
+                } else {
+                    markRunnable(queue);
+                }
+                dispatch();
+            }
+        }
+    }
+
+    private static ExecutorService createWorkers(int poolSize, boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                // Resolved reflectively so the build still targets Java 17.
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ExecutorService executor = (ExecutorService) factory.invoke(null);
+                log.info("Crawl executor using virtual threads (max {} concurrent fetches).", poolSize);
+                return executor;
+            } catch (ReflectiveOperationException ex) {
+                log.info("Virtual threads unavailable on Java {}, falling back to platform threads.",
+                        Runtime.version().feature());
+            }
+        }
+        log.info("Crawl executor using a fixed pool of {} platform threads.", poolSize);
+        return Executors.newFixedThreadPool(poolSize, new CrawlThreadFactory());
+    }
+
+    private static final class HostQueue {
+        private final String host;
+        private final Deque<QueuedTask> pending = new ArrayDeque<>();
+        private int active;
+        private boolean scheduled;
+        private boolean throttled;
+
+        private HostQueue(String host) {
+            this.host = host;
+        }
+    }
+
+    private record QueuedTask(Runnable run, Consumer<Throwable> fail) {
+    }
+
+    private static final class CrawlThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "crawl-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Source;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.Security;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Single HTTP client shared by every crawler fetch. The underlying {@link HttpClient} keeps connections
+ * alive per host (HTTP/2 where the server supports it), so a site pays its TLS handshake once per pool
+ * instead of once per article. Bodies are read with a size cap and handed to Jsoup as bytes.
+ */
+@Service
+public class CrawlHttpClient {
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private final HttpClient httpClient;
+    private final String userAgent;
+    private final int defaultTimeoutMs;
+    private final int defaultMaxBodyBytes;
+
+    public CrawlHttpClient(@Value("${crawler.http.user-agent:Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0 Safari/537.36}") String userAgent,
+                           @Value("${crawler.http.connect-timeout-ms:5000}") int connectTimeoutMs,
+                           @Value("${crawler.http.timeout-ms:5000}") int defaultTimeoutMs,
+                           @Value("${crawler.http.max-body-bytes:5242880}") int defaultMaxBodyBytes) {
+        this.userAgent = userAgent;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.defaultMaxBodyBytes = defaultMaxBodyBytes;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    /**
+     * JVM-wide network settings that have to be in place before the first lookup or client is created,
+     * so this is called from {@code main} rather than from the bean.
+     */
+    public static void configureNetworkDefaults() {
+        // Cache successful DNS lookups for five minutes instead of the JDK default of 30 seconds.
+        if (Security.getProperty("networkaddress.cache.ttl") == null) {
+            Security.setProperty("networkaddress.cache.ttl", System.getProperty("crawler.dns.cache-ttl", "300"));
+        }
+        // Keep idle pooled connections around long enough to be reused across bot cycles.
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", "300");
+        }
+    }
+
+    /**
+     * Fetch {@code url} using the source's timeout and body limit. Non-2xx responses raise
+     * {@link HttpStatusException}, matching what {@code Jsoup.connect(url).get()} used to do.
+     */
+    public FetchResult fetch(String url, Source source) throws IOException {
+        FetchResult result = execute(url, source, null, null);
+        if (result.statusCode() < 200 || result.statusCode() >= 300) {
+            throw new HttpStatusException("HTTP error fetching URL", result.statusCode(), url);
+        }
+        return result;
+    }
+
+    /**
+     * Conditional GET using the validators from a previous response. A {@code 304 Not Modified} is returned
+     * as a result with an empty body rather than raised as an error.
+     */
+    public FetchResult fetchIfModified(String url, Source source, String etag, String lastModified) throws IOException {
+        FetchResult result = execute(url, source, etag, lastModified);
+        if (result.isNotModified()) {
+            return result;
+        }
+        if (result.statusCode() < 200 || result.statusCode() >= 300) {
+            throw new HttpStatusException("HTTP error fetching URL", result.statusCode(), url);
+        }
+        return result;
+    }
+
+    public Document parse(FetchResult result) throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(result.body()), result.charset(), result.uri().toString());
+    }
+
+    private FetchResult execute(String url, Source source, String etag, String lastModified) throws IOException {
+        int timeoutMs = resolveTimeout(source);
+        int maxBodyBytes = resolveMaxBodyBytes(source);
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url.trim()))
+                    .timeout(Duration.ofMillis(timeoutMs))
+                    .header("User-Agent", userAgent)
+                    .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+                    .header("Accept-Encoding", ACCEPT_ENCODING)
+                    .GET();
+            if (etag != null && !etag.isBlank()) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null && !lastModified.isBlank()) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid URL: " + url, ex);
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+
+        HttpHeaders headers = response.headers();
+        if (response.statusCode() == 304) {
+            response.body().close();
+            return new FetchResult(304, response.uri(), headers, new byte[0], null);
+        }
+        long declaredLength = headers.firstValueAsLong("Content-Length").orElse(-1L);
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        if (declaredLength > maxBodyBytes && encoding.isEmpty()) {
+            response.body().close();
+            throw new IOException("Response from " + url + " exceeds " + maxBodyBytes + " bytes");
+        }
+
+        byte[] body;
+        try (InputStream raw = response.body(); InputStream decoded = decode(raw, encoding)) {
+            body = readLimited(decoded, maxBodyBytes, url);
+        }
+        String charset = extractCharset(headers.firstValue("Content-Type").orElse(null));
+        return new FetchResult(response.statusCode(), response.uri(), headers, body, charset);
+    }
+
+    private InputStream decode(InputStream raw, String encoding) throws IOException {
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(raw);
+            case "deflate":
+                return new InflaterInputStream(raw);
+            default:
+                return raw;
+        }
+    }
+
+    // Caps the decoded size so a compressed response cannot expand past the limit.
+    private byte[] readLimited(InputStream in, int maxBodyBytes, String url) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxBodyBytes, 64 * 1024));
+        byte[] buffer = new byte[16 * 1024];
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > maxBodyBytes) {
+                throw new IOException("Response from " + url + " exceeds " + maxBodyBytes + " bytes");
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private String extractCharset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String part : contentType.split(";")) {
+            String trimmed = part.trim();
+            if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                String value = trimmed.substring(8).replace("\"", "").trim();
+                return value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+
+    private int resolveTimeout(Source source) {
+        Integer timeout = source != null ? source.getFetchTimeoutMs() : null;
+        return timeout != null && timeout > 0 ? timeout : defaultTimeoutMs;
+    }
+
+    private int resolveMaxBodyBytes(Source source) {
+        Integer maxBytes = source != null ? source.getMaxBodyBytes() : null;
+        return maxBytes != null && maxBytes > 0 ? maxBytes : defaultMaxBodyBytes;
+    }
+
+    /**
+     * Decoded response. {@code charset} is null when the server did not declare one, in which case
+     * Jsoup sniffs it from the document.
+     */
+    public record FetchResult(int statusCode, URI uri, HttpHeaders headers, byte[] body, String charset) {
+
+        public boolean isNotModified() {
+            return statusCode == 304;
+        }
+
+        public String etag() {
+            return headers.firstValue("ETag").orElse(null);
+        }
+
+        public String lastModified() {
+            return headers.firstValue("Last-Modified").orElse(null);
+        }
+    }
+}
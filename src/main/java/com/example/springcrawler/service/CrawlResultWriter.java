@@ -0,0 +1,260 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Post;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for crawl results. Producers only hand results over and return; a single flusher
+ * thread writes them once {@code batch-size} results are waiting or {@code flush-interval-ms} has passed since
+ * the oldest one arrived, crawled posts as one JDBC batch and failed crawls as another, each in its own
+ * transaction. Whatever is still buffered is flushed when the application shuts down.
+ */
+@Component
+public class CrawlResultWriter {
+    private static final Logger log = LoggerFactory.getLogger(CrawlResultWriter.class);
+
+    private final PostService postService;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<PendingWrite> queue;
+    private final ThroughputMeter meter = new ThroughputMeter(60);
+    private final AtomicInteger flushing = new AtomicInteger();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private Thread flusher;
+
+    public CrawlResultWriter(PostService postService,
+                             @Value("${crawler.writer.batch-size:100}") int batchSize,
+                             @Value("${crawler.writer.flush-interval-ms:500}") long flushIntervalMs,
+                             @Value("${crawler.writer.queue-capacity:1000}") int queueCapacity) {
+        this.postService = postService;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMs));
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, queueCapacity));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            flusher = new Thread(this::runFlusher, "crawl-result-writer");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Flush everything still buffered before the data source goes away. Producers are stopped first, since
+     * the crawl pipeline depends on this bean and is destroyed before it.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running.set(false);
+        if (flusher != null) {
+            try {
+                // The flusher checks the flag at least once per flush interval, so this only waits out a flush in progress.
+                flusher.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 30_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            flush(remaining.subList(from, Math.min(from + batchSize, remaining.size())));
+        }
+        if (!remaining.isEmpty()) {
+            log.info("Flushed {} buffered crawl results on shutdown.", remaining.size());
+        }
+    }
+
+    /**
+     * Buffer a crawled post. Waits only for buffer space, never for the database.
+     *
+     * @return completes once the post has been written
+     */
+    public CompletableFuture<Void> submitCrawled(Post post) throws InterruptedException {
+        return submit(new PendingWrite(post, null, false));
+    }
+
+    /**
+     * Buffer a failed crawl so its retry schedule is recorded with the next flush.
+     */
+    public CompletableFuture<Void> submitFailure(Post post, Exception error, boolean permanent) throws InterruptedException {
+        return submit(new PendingWrite(post, error, permanent));
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getFlushingCount() {
+        return flushing.get();
+    }
+
+    public long getWrittenCount() {
+        return meter.getTotal();
+    }
+
+    public double getWritesPerSecond() {
+        return meter.getRatePerSecond();
+    }
+
+    /**
+     * Crawl results dropped because the post's lease had passed to another worker or its status had changed.
+     */
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    private CompletableFuture<Void> submit(PendingWrite write) throws InterruptedException {
+        if (!running.get()) {
+            // Late arrivals during shutdown are written directly rather than lost.
+            flush(List.of(write));
+            return write.done;
+        }
+        queue.put(write);
+        return write.done;
+    }
+
+    private void runFlusher() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running.get()) {
+            try {
+                PendingWrite first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running.get()) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running.set(false);
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        flushing.set(batch.size());
+        List<Post> crawled = new ArrayList<>(batch.size());
+        List<PostService.CrawlFailure> failed = new ArrayList<>();
+        try {
+            for (PendingWrite write : batch) {
+                if (write.error == null) {
+                    crawled.add(write.post);
+                } else {
+                    failed.add(failure(write.post, write.error, write.permanent));
+                }
+            }
+            if (!crawled.isEmpty()) {
+                saveCrawled(crawled, failed);
+            }
+            if (!failed.isEmpty()) {
+                recordFailures(failed);
+            }
+        } finally {
+            meter.mark(batch.size());
+            flushing.set(0);
+            for (PendingWrite write : batch) {
+                write.done.complete(null);
+            }
+        }
+    }
+
+    // Posts that cannot be saved even on their own are recorded as failures with the rest of the flush.
+    private void saveCrawled(List<Post> crawled, List<PostService.CrawlFailure> failed) {
+        try {
+            logStale(postService.saveCrawledPosts(crawled));
+        } catch (RuntimeException ex) {
+            // One bad row fails the whole transaction; fall back to saving them one by one.
+            log.warn("Batch write of {} crawled posts failed, saving individually: {}", crawled.size(), ex.getMessage());
+            for (Post post : crawled) {
+                try {
+                    logStale(postService.saveCrawledPosts(List.of(post)));
+                } catch (RuntimeException single) {
+                    failed.add(failure(post, single, false));
+                }
+            }
+        }
+    }
+
+    private void recordFailures(List<PostService.CrawlFailure> failed) {
+        try {
+            logStale(postService.recordCrawlFailures(failed));
+        } catch (RuntimeException ex) {
+            log.warn("Batch write of {} crawl failures failed, recording individually: {}", failed.size(), ex.getMessage());
+            for (PostService.CrawlFailure failure : failed) {
+                try {
+                    logStale(postService.recordCrawlFailures(List.of(failure)));
+                } catch (RuntimeException single) {
+                    log.error("Could not record crawl failure for post {}: {}", failure.post().getId(), single.getMessage());
+                }
+            }
+            return;
+        }
+        for (PostService.CrawlFailure failure : failed) {
+            Post post = failure.post();
+            if (post.getStatus() == Post.Status.FAILED) {
+                log.warn("Giving up on post {} after {} attempts: {}", post.getId(), post.getAttemptCount(), failure.error());
+            } else {
+                log.error("Error crawling post {} (attempt {}), retrying at {}: {}",
+                        post.getId(), post.getAttemptCount(), post.getNextAttemptAt(), failure.error());
+            }
+        }
+    }
+
+    private void logStale(List<Post> stale) {
+        if (!stale.isEmpty()) {
+            staleCount.addAndGet(stale.size());
+            log.warn("Dropped {} crawl results whose lease was lost or whose post is no longer UNCRAWL: ids {}",
+                    stale.size(), stale.stream().map(Post::getId).toList());
+        }
+    }
+
+    private static PostService.CrawlFailure failure(Post post, Exception error, boolean permanent) {
+        return new PostService.CrawlFailure(post, error.getClass().getSimpleName() + ": " + error.getMessage(), permanent);
+    }
+
+    private static final class PendingWrite {
+        private final Post post;
+        private final Exception error;
+        private final boolean permanent;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private PendingWrite(Post post, Exception error, boolean permanent) {
+            this.post = post;
+            this.error = error;
+            this.permanent = permanent;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.springcrawler.service;
+
+import org.jsoup.Jsoup;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams RSS 2.0/RDF, Atom, {@code sitemap.xml} (including Google News and image extensions) and sitemap
+ * index documents with StAX, keeping only the fields discovery needs. The document type is taken from the
+ * root element, so a source's discovery mode only decides which URL is fetched. Gzipped sitemaps are
+ * recognised by their magic bytes; DTDs and external entities are never resolved.
+ */
+@Component
+public class FeedDiscoveryParser {
+    // Sitemaps are capped at 50,000 URLs by the protocol; anything beyond that is not a real sitemap.
+    private static final int MAX_ITEMS = 50_000;
+    private static final String MEDIA_NS = "http://search.yahoo.com/mrss/";
+    private static final String RSS1_NS = "http://purl.org/rss/1.0/";
+    private static final XMLInputFactory XML = createFactory();
+
+    public ParsedFeed parse(byte[] body, String baseUrl) throws IOException {
+        try (InputStream in = open(body)) {
+            XMLStreamReader reader = XML.createXMLStreamReader(in);
+            try {
+                return read(reader, baseUrl);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Malformed feed or sitemap at " + baseUrl + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private ParsedFeed read(XMLStreamReader reader, String baseUrl) throws XMLStreamException, IOException {
+        Format format = null;
+        List<PostService.DiscoveredLink> items = new ArrayList<>();
+        ItemBuilder current = null;
+        boolean inImage = false;
+        StringBuilder text = new StringBuilder();
+
+        while (reader.hasNext() && items.size() < MAX_ITEMS) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (format == null) {
+                    format = Format.fromRoot(name);
+                    if (format == null) {
+                        throw new IOException("Not a feed or sitemap: root element <" + name + "> at " + baseUrl);
+                    }
+                } else if (current == null) {
+                    if (format.itemElement.equals(name)) {
+                        current = new ItemBuilder();
+                    }
+                } else {
+                    text.setLength(0);
+                    if (format == Format.SITEMAP && "image".equals(name)) {
+                        inImage = true;
+                    }
+                    readAttributes(reader, format, name, current, baseUrl);
+                }
+            } else if (current != null && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            } else if (current != null && event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (format.itemElement.equals(name)) {
+                    PostService.DiscoveredLink item = current.build();
+                    if (item != null) {
+                        items.add(item);
+                    }
+                    current = null;
+                    continue;
+                }
+                String value = text.toString().trim();
+                text.setLength(0);
+                if (format == Format.SITEMAP && "image".equals(name)) {
+                    inImage = false;
+                } else if (!value.isEmpty()) {
+                    readText(format, reader.getNamespaceURI(), name, value, inImage, current, baseUrl);
+                }
+            }
+        }
+        if (format == null) {
+            throw new IOException("Empty feed or sitemap at " + baseUrl);
+        }
+        return new ParsedFeed(format == Format.SITEMAP_INDEX, items);
+    }
+
+    private void readAttributes(XMLStreamReader reader, Format format, String name, ItemBuilder item, String baseUrl) {
+        if (format == Format.ATOM && "link".equals(name)) {
+            String rel = reader.getAttributeValue(null, "rel");
+            if (item.url == null && (rel == null || "alternate".equals(rel))) {
+                item.url = resolve(baseUrl, reader.getAttributeValue(null, "href"));
+            }
+        } else if (MEDIA_NS.equals(reader.getNamespaceURI()) && ("content".equals(name) || "thumbnail".equals(name))) {
+            String medium = reader.getAttributeValue(null, "medium");
+            String type = reader.getAttributeValue(null, "type");
+            boolean image = "thumbnail".equals(name) || "image".equals(medium)
+                    || type != null && type.startsWith("image/") || medium == null && type == null;
+            if (item.imageUrl == null && image) {
+                item.imageUrl = resolve(baseUrl, reader.getAttributeValue(null, "url"));
+            }
+        } else if ("enclosure".equals(name)) {
+            String type = reader.getAttributeValue(null, "type");
+            if (item.imageUrl == null && type != null && type.startsWith("image/")) {
+                item.imageUrl = resolve(baseUrl, reader.getAttributeValue(null, "url"));
+            }
+        }
+    }
+
+    private void readText(Format format, String namespace, String name, String value, boolean inImage,
+                          ItemBuilder item, String baseUrl) {
+        switch (format) {
+            case RSS -> {
+                // Extension elements (media:title, atom:link, ...) share local names with the RSS ones.
+                boolean plain = namespace == null || namespace.isEmpty() || RSS1_NS.equals(namespace);
+                switch (name) {
+                    case "link" -> {
+                        if (plain && item.url == null) {
+                            item.url = resolve(baseUrl, value);
+                        }
+                    }
+                    case "title" -> {
+                        if (plain) {
+                            item.title = value;
+                        }
+                    }
+                    case "description" -> {
+                        if (plain) {
+                            item.description = value;
+                        }
+                    }
+                    case "pubDate", "date" -> item.publishedAt = parseDate(value);
+                    default -> {
+                    }
+                }
+            }
+            case ATOM -> {
+                switch (name) {
+                    case "title" -> item.title = value;
+                    case "summary" -> item.description = value;
+                    case "published" -> item.publishedAt = parseDate(value);
+                    case "updated" -> {
+                        if (item.publishedAt == null) {
+                            item.publishedAt = parseDate(value);
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            case SITEMAP, SITEMAP_INDEX -> {
+                switch (name) {
+                    case "loc" -> {
+                        if (inImage) {
+                            if (item.imageUrl == null) {
+                                item.imageUrl = resolve(baseUrl, value);
+                            }
+                        } else {
+                            item.url = resolve(baseUrl, value);
+                        }
+                    }
+                    case "lastmod", "publication_date" -> item.publishedAt = parseDate(value);
+                    case "title" -> {
+                        if (!inImage) {
+                            item.title = value;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+    }
+
+    private InputStream open(byte[] body) throws IOException {
+        InputStream in = new ByteArrayInputStream(body);
+        if (body.length >= 2 && (body[0] & 0xFF) == 0x1F && (body[1] & 0xFF) == 0x8B) {
+            return new GZIPInputStream(in);
+        }
+        return in;
+    }
+
+    private static String resolve(String baseUrl, String href) {
+        if (!StringUtils.hasText(href)) {
+            return null;
+        }
+        String trimmed = href.trim();
+        if (trimmed.startsWith("http://") || trimmed.startsWith("https://") || baseUrl == null) {
+            return trimmed;
+        }
+        try {
+            return URI.create(baseUrl).resolve(trimmed).toString();
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    // RSS uses RFC 822 dates, Atom and sitemaps use W3C datetime (which may be a bare date).
+    static LocalDateTime parseDate(String value) {
+        String trimmed = value.trim();
+        try {
+            return ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException ignored) {
+            // Not RFC 822; try the W3C forms.
+        }
+        try {
+            return OffsetDateTime.parse(trimmed).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException ignored) {
+            // No offset.
+        }
+        try {
+            return LocalDateTime.parse(trimmed);
+        } catch (DateTimeParseException ignored) {
+            // Date only.
+        }
+        try {
+            return LocalDate.parse(trimmed).atStartOfDay();
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    private enum Format {
+        RSS("item"),
+        ATOM("entry"),
+        SITEMAP("url"),
+        SITEMAP_INDEX("sitemap");
+
+        private final String itemElement;
+
+        Format(String itemElement) {
+            this.itemElement = itemElement;
+        }
+
+        private static Format fromRoot(String root) {
+            return switch (root) {
+                case "rss", "RDF" -> RSS;
+                case "feed" -> ATOM;
+                case "urlset" -> SITEMAP;
+                case "sitemapindex" -> SITEMAP_INDEX;
+                default -> null;
+            };
+        }
+    }
+
+    /**
+     * Items of a feed or sitemap in document order. For a sitemap index the items are the child sitemaps,
+     * with their {@code <lastmod>} as the date.
+     */
+    public record ParsedFeed(boolean sitemapIndex, List<PostService.DiscoveredLink> items) {
+    }
+
+    private static final class ItemBuilder {
+        private String url;
+        private String title;
+        private String description;
+        private String imageUrl;
+        private LocalDateTime publishedAt;
+
+        private PostService.DiscoveredLink build() {
+            if (url == null) {
+                return null;
+            }
+            return new PostService.DiscoveredLink(url, null, title, plainText(description), imageUrl, publishedAt);
+        }
+
+        // Feed descriptions are often escaped HTML with an inline thumbnail; only the text is kept.
+        private static String plainText(String value) {
+            if (value == null || value.indexOf('<') < 0 && value.indexOf('&') < 0) {
+                return value;
+            }
+            String text = Jsoup.parse(value).text().trim();
+            return text.isEmpty() ? null : text;
+        }
+    }
+}
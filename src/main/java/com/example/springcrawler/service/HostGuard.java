@@ -0,0 +1,278 @@
+package com.example.springcrawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-host request budget and health. Each host gets a token bucket refilled at {@code rate-per-second} up to
+ * {@code burst} tokens, which the {@link CrawlExecutorService} draws from before starting a fetch. Each host
+ * also gets a circuit breaker: {@code failure-threshold} consecutive timeouts, connection errors, 5xx or 429
+ * responses open it for {@code open-seconds}, after which a single trial fetch decides whether it closes
+ * again or stays open for another period. A host's robots.txt {@code Crawl-delay} lowers its refill rate and
+ * shrinks its bucket to a single token, so requests are spaced by at least that delay.
+ * <p>
+ * Hosts that have gone quiet are dropped on a timer once their state is indistinguishable from a fresh one:
+ * a full bucket at the configured rate, a closed breaker and no failures on record.
+ */
+@Component
+public class HostGuard {
+    private static final Logger log = LoggerFactory.getLogger(HostGuard.class);
+    private static final Duration MAX_TRIAL_WAIT = Duration.ofMinutes(1);
+
+    private final double ratePerSecond;
+    private final double burst;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    public HostGuard(@Value("${crawler.host.rate-per-second:2.0}") double ratePerSecond,
+                     @Value("${crawler.host.burst:5}") int burst,
+                     @Value("${crawler.host.breaker.failure-threshold:5}") int failureThreshold,
+                     @Value("${crawler.host.breaker.open-seconds:300}") long openSeconds) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDuration = Duration.ofSeconds(Math.max(1, openSeconds));
+    }
+
+    /**
+     * Take one request token for the host.
+     *
+     * @return 0 if the request may start now, otherwise the nanoseconds until the next token is available
+     */
+    public long reserve(String host) {
+        if (!StringUtils.hasText(host)) {
+            return 0;
+        }
+        HostState state = stateOf(host);
+        synchronized (state) {
+            if (state.rate <= 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            state.tokens = Math.min(state.capacity, state.tokens + (now - state.refilledAt) * state.rate / TimeUnit.SECONDS.toNanos(1));
+            state.refilledAt = now;
+            if (state.tokens >= 1) {
+                state.tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - state.tokens) / state.rate * TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+
+    /**
+     * Apply a host's robots.txt crawl delay; null or zero goes back to the configured rate and burst.
+     */
+    public void setCrawlDelay(String host, Duration delay) {
+        if (!StringUtils.hasText(host)) {
+            return;
+        }
+        HostState state = stateOf(host);
+        synchronized (state) {
+            if (delay == null || delay.isZero() || delay.isNegative()) {
+                state.rate = ratePerSecond;
+                state.capacity = burst;
+            } else {
+                double delayRate = (double) TimeUnit.SECONDS.toNanos(1) / delay.toNanos();
+                state.rate = ratePerSecond > 0 ? Math.min(ratePerSecond, delayRate) : delayRate;
+                state.capacity = 1;
+            }
+            state.tokens = Math.min(state.tokens, state.capacity);
+        }
+    }
+
+    /**
+     * Whether work for the host should be held back right now, without using up the trial fetch.
+     *
+     * @return when to look at the host again, or null if it may be fetched
+     */
+    public LocalDateTime blockedUntil(String host) {
+        HostState state = existingState(host);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            LocalDateTime now = LocalDateTime.now();
+            if (state.openUntil != null && now.isBefore(state.openUntil)) {
+                return state.openUntil;
+            }
+            return state.trialInFlight ? now.plus(trialWait()) : null;
+        }
+    }
+
+    /**
+     * Ask to fetch from the host now. Once an open breaker's period is over, exactly one caller is let through
+     * as the trial and everyone else is held back until it reports.
+     *
+     * @return when to look at the host again, or null if the fetch may go ahead
+     */
+    public LocalDateTime tryPass(String host) {
+        HostState state = existingState(host);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            LocalDateTime now = LocalDateTime.now();
+            if (state.openUntil != null && now.isBefore(state.openUntil)) {
+                return state.openUntil;
+            }
+            if (state.trialInFlight) {
+                return now.plus(trialWait());
+            }
+            if (state.openUntil != null) {
+                state.openUntil = null;
+                state.trialInFlight = true;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The host answered; any response that is not a server error counts, including 404.
+     */
+    public void recordSuccess(String host) {
+        HostState state = existingState(host);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.trialInFlight) {
+                log.info("Circuit for host {} closed after a successful trial fetch.", host);
+            }
+            state.trialInFlight = false;
+            state.consecutiveFailures = 0;
+        }
+    }
+
+    public void recordFailure(String host) {
+        if (!StringUtils.hasText(host)) {
+            return;
+        }
+        HostState state = stateOf(host);
+        synchronized (state) {
+            state.consecutiveFailures++;
+            if (state.trialInFlight || state.openUntil == null && state.consecutiveFailures >= failureThreshold) {
+                state.trialInFlight = false;
+                state.openUntil = LocalDateTime.now().plus(openDuration);
+                state.timesOpened++;
+                log.warn("Circuit for host {} opened after {} consecutive failures; parking its posts until {}.",
+                        host, state.consecutiveFailures, state.openUntil);
+            }
+        }
+    }
+
+    /**
+     * Fetch ended without telling anything about the host (e.g. a local error); frees the trial slot if held.
+     */
+    public void release(String host) {
+        HostState state = existingState(host);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.trialInFlight = false;
+        }
+    }
+
+    /**
+     * Drop hosts whose entry would be recreated as is on their next request. A caller that looked a host up
+     * just before it was dropped updates the detached entry once, which at worst grants that host one extra token.
+     */
+    @Scheduled(initialDelayString = "${crawler.host.idle-sweep-interval-ms:600000}",
+            fixedDelayString = "${crawler.host.idle-sweep-interval-ms:600000}")
+    public void evictIdleHosts() {
+        long now = System.nanoTime();
+        int before = hosts.size();
+        hosts.values().removeIf(state -> isIdle(state, now));
+        int evicted = before - hosts.size();
+        if (evicted > 0) {
+            log.debug("Dropped {} idle hosts, {} still tracked.", evicted, hosts.size());
+        }
+    }
+
+    public int getTrackedHostCount() {
+        return hosts.size();
+    }
+
+    /**
+     * Hosts whose breaker is not closed or that have failures on record, worst first.
+     */
+    public List<HostStatus> getUnhealthyHosts() {
+        List<HostStatus> statuses = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        hosts.forEach((host, state) -> {
+            synchronized (state) {
+                String circuit = state.openUntil != null && now.isBefore(state.openUntil) ? "open"
+                        : state.trialInFlight || state.openUntil != null ? "half-open" : "closed";
+                if (!"closed".equals(circuit) || state.consecutiveFailures > 0) {
+                    statuses.add(new HostStatus(host, circuit, state.consecutiveFailures, state.timesOpened, state.openUntil));
+                }
+            }
+        });
+        statuses.sort(Comparator.comparingInt(HostStatus::consecutiveFailures).reversed());
+        return statuses;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    // A crawl delay only lives here, so a host that has one is kept until its robots.txt is re-read.
+    private boolean isIdle(HostState state, long now) {
+        synchronized (state) {
+            if (state.openUntil != null || state.trialInFlight || state.consecutiveFailures > 0
+                    || state.rate != ratePerSecond || state.capacity != burst) {
+                return false;
+            }
+            return state.rate <= 0
+                    || state.tokens + (now - state.refilledAt) * state.rate / TimeUnit.SECONDS.toNanos(1) >= state.capacity;
+        }
+    }
+
+    private Duration trialWait() {
+        return openDuration.compareTo(MAX_TRIAL_WAIT) < 0 ? openDuration : MAX_TRIAL_WAIT;
+    }
+
+    private HostState stateOf(String host) {
+        return hosts.computeIfAbsent(host.toLowerCase(Locale.ROOT), key -> new HostState(ratePerSecond, burst));
+    }
+
+    private HostState existingState(String host) {
+        return StringUtils.hasText(host) ? hosts.get(host.toLowerCase(Locale.ROOT)) : null;
+    }
+
+    public record HostStatus(String host, String circuit, int consecutiveFailures, int timesOpened,
+                             LocalDateTime openUntil) {
+    }
+
+    private static final class HostState {
+        private double rate;
+        private double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private int consecutiveFailures;
+        private int timesOpened;
+        private LocalDateTime openUntil;
+        private boolean trialInFlight;
+
+        private HostState(double rate, double capacity) {
+            this.rate = rate;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package com.example.springcrawler.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the raw HTML of fetched articles on local disk so pages can be re-extracted without another
+ * request to the publisher.
+ * <p>
+ * Records are appended to numbered segment files, each record being its own gzip member (as in WARC).
+ * Every segment has a side index of fixed 20-byte entries {@code (postId, offset, length)}; the index entry
+ * is written after the data, so a crash can only leave unreferenced bytes behind. On startup the last
+ * segment is appended to again while it has room. Once a segment reaches {@code segment-max-bytes} it is
+ * sealed: its index is loaded into sorted primitive arrays, and its data file is memory-mapped on first read,
+ * with only the {@code mapped-segments} most recently read segments kept mapped. The oldest segments are
+ * deleted once the archive exceeds {@code retention-max-bytes}. When a post is archived more than once, the
+ * newest copy wins.
+ * <p>
+ * Appends and reads of the active segment share one lock; sealed segments are read under a separate
+ * read-write lock, so lookups of older pages do not hold up the crawl's appends.
+ */
+@Component
+public class HtmlArchive {
+    private static final Logger log = LoggerFactory.getLogger(HtmlArchive.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{6})\\.dat");
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final long MAX_MAPPABLE_BYTES = Integer.MAX_VALUE;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentMaxBytes;
+    private final long retentionMaxBytes;
+    private final Map<Integer, MappedByteBuffer> mappings;
+
+    // Guards active. Taken before sealedLock when both are needed.
+    private final Object lock = new Object();
+    private final ReadWriteLock sealedLock = new ReentrantReadWriteLock();
+    // Oldest first; guarded by sealedLock.
+    private final Deque<SealedSegment> sealed = new ArrayDeque<>();
+    private ActiveSegment active;
+    private long sealedBytes;
+
+    public HtmlArchive(@Value("${crawler.archive.enabled:true}") boolean enabled,
+                       @Value("${crawler.archive.dir:data/html-archive}") String directory,
+                       @Value("${crawler.archive.segment-max-bytes:268435456}") long segmentMaxBytes,
+                       @Value("${crawler.archive.retention-max-bytes:10737418240}") long retentionMaxBytes,
+                       @Value("${crawler.archive.mapped-segments:8}") int mappedSegments) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentMaxBytes = Math.max(1024 * 1024, Math.min(MAX_MAPPABLE_BYTES, segmentMaxBytes));
+        this.retentionMaxBytes = Math.max(this.segmentMaxBytes, retentionMaxBytes);
+        int maxMapped = Math.max(1, mappedSegments);
+        // Access-ordered; a mapping that falls out is unmapped once the collector reclaims it.
+        this.mappings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, MappedByteBuffer> eldest) {
+                return size() > maxMapped;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            sealedLock.writeLock().lock();
+            try {
+                Files.createDirectories(directory);
+                List<Integer> numbers = existingSegmentNumbers();
+                int lastNumber = numbers.isEmpty() ? 0 : numbers.get(numbers.size() - 1);
+                for (int number : numbers) {
+                    if (number == lastNumber && Files.size(dataPath(number)) < segmentMaxBytes) {
+                        // Still has room: keep appending to it rather than starting a new file on every restart.
+                        break;
+                    }
+                    if (Files.size(dataPath(number)) == 0) {
+                        Files.deleteIfExists(indexPath(number));
+                        Files.deleteIfExists(dataPath(number));
+                        continue;
+                    }
+                    SealedSegment segment = SealedSegment.load(dataPath(number), indexPath(number), number);
+                    sealed.addLast(segment);
+                    sealedBytes += segment.sizeBytes;
+                }
+                if (lastNumber > 0 && Files.size(dataPath(lastNumber)) < segmentMaxBytes) {
+                    active = ActiveSegment.reopen(dataPath(lastNumber), indexPath(lastNumber), lastNumber);
+                } else {
+                    active = ActiveSegment.create(dataPath(lastNumber + 1), indexPath(lastNumber + 1), lastNumber + 1);
+                }
+                enforceRetention();
+                log.info("HTML archive at {}: {} sealed segments, {} bytes; appending to segment {}.",
+                        directory.toAbsolutePath(), sealed.size(), sealedBytes, active.number);
+            } catch (IOException ex) {
+                log.error("HTML archive disabled, could not open {}: {}", directory.toAbsolutePath(), ex.getMessage());
+                active = null;
+            } finally {
+                sealedLock.writeLock().unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (lock) {
+            if (active != null) {
+                active.close();
+                active = null;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        synchronized (lock) {
+            return active != null;
+        }
+    }
+
+    /**
+     * Append a fetched page. Compression happens before the lock is taken, so concurrent callers only
+     * serialize on the file append itself.
+     */
+    public void store(long postId, CrawlHttpClient.FetchResult result) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        byte[] record = encode(new ArchivedPage(postId, result.uri().toString(), result.charset(),
+                System.currentTimeMillis(), result.body()));
+        synchronized (lock) {
+            if (active == null) {
+                return;
+            }
+            if (active.sizeBytes > 0 && active.sizeBytes + record.length > segmentMaxBytes) {
+                roll();
+            }
+            active.append(postId, record);
+        }
+    }
+
+    public Optional<ArchivedPage> read(long postId) throws IOException {
+        byte[] record = null;
+        synchronized (lock) {
+            if (active != null) {
+                record = active.read(postId);
+            }
+        }
+        // A copy rolled out of the active segment meanwhile is already in the newest sealed one.
+        if (record == null) {
+            sealedLock.readLock().lock();
+            try {
+                Iterator<SealedSegment> newestFirst = sealed.descendingIterator();
+                while (record == null && newestFirst.hasNext()) {
+                    SealedSegment segment = newestFirst.next();
+                    int slot = segment.find(postId);
+                    if (slot >= 0) {
+                        record = segment.read(slot, mappingOf(segment));
+                    }
+                }
+            } finally {
+                sealedLock.readLock().unlock();
+            }
+        }
+        return record != null ? Optional.of(decode(record)) : Optional.empty();
+    }
+
+    public int getSegmentCount() {
+        synchronized (lock) {
+            sealedLock.readLock().lock();
+            try {
+                return sealed.size() + (active != null ? 1 : 0);
+            } finally {
+                sealedLock.readLock().unlock();
+            }
+        }
+    }
+
+    public long getSizeBytes() {
+        synchronized (lock) {
+            sealedLock.readLock().lock();
+            try {
+                return sealedBytes + (active != null ? active.sizeBytes : 0);
+            } finally {
+                sealedLock.readLock().unlock();
+            }
+        }
+    }
+
+    public long getPageCount() {
+        synchronized (lock) {
+            sealedLock.readLock().lock();
+            try {
+                long pages = active != null ? active.entries.size() : 0;
+                for (SealedSegment segment : sealed) {
+                    pages += segment.ids.length;
+                }
+                return pages;
+            } finally {
+                sealedLock.readLock().unlock();
+            }
+        }
+    }
+
+    private MappedByteBuffer mappingOf(SealedSegment segment) throws IOException {
+        synchronized (mappings) {
+            MappedByteBuffer mapped = mappings.get(segment.number);
+            if (mapped == null) {
+                try (FileChannel channel = FileChannel.open(segment.dataPath, StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.sizeBytes);
+                }
+                mappings.put(segment.number, mapped);
+            }
+            return mapped;
+        }
+    }
+
+    // Caller must hold lock.
+    private void roll() throws IOException {
+        active.close();
+        SealedSegment segment = SealedSegment.load(active.dataPath, active.indexPath, active.number);
+        int next = active.number + 1;
+        sealedLock.writeLock().lock();
+        try {
+            sealed.addLast(segment);
+            sealedBytes += segment.sizeBytes;
+            active = ActiveSegment.create(dataPath(next), indexPath(next), next);
+            log.info("HTML archive rolled to segment {} ({} sealed bytes).", next, sealedBytes);
+            enforceRetention();
+        } finally {
+            sealedLock.writeLock().unlock();
+        }
+    }
+
+    // Caller must hold lock and the sealedLock write lock.
+    private void enforceRetention() {
+        while (sealedBytes + (active != null ? active.sizeBytes : 0) > retentionMaxBytes && !sealed.isEmpty()) {
+            SealedSegment oldest = sealed.pollFirst();
+            sealedBytes -= oldest.sizeBytes;
+            synchronized (mappings) {
+                mappings.remove(oldest.number);
+            }
+            try {
+                Files.deleteIfExists(oldest.indexPath);
+                Files.deleteIfExists(oldest.dataPath);
+                log.info("HTML archive dropped segment {} ({} bytes) to stay under {} bytes.",
+                        oldest.number, oldest.sizeBytes, retentionMaxBytes);
+            } catch (IOException ex) {
+                log.warn("Could not delete archive segment {}: {}", oldest.number, ex.getMessage());
+            }
+        }
+    }
+
+    private List<Integer> existingSegmentNumbers() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Integer.parseInt(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path dataPath(int number) {
+        return directory.resolve(String.format("segment-%06d.dat", number));
+    }
+
+    private Path indexPath(int number) {
+        return directory.resolve(String.format("segment-%06d.idx", number));
+    }
+
+    private static byte[] encode(ArchivedPage page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(page.body().length / 4 + 256);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeLong(page.postId());
+            out.writeUTF(page.url());
+            out.writeUTF(page.charset() != null ? page.charset() : "");
+            out.writeLong(page.fetchedAtMillis());
+            out.writeInt(page.body().length);
+            out.write(page.body());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ArchivedPage decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(record)))) {
+            long postId = in.readLong();
+            String url = in.readUTF();
+            String charset = in.readUTF();
+            long fetchedAt = in.readLong();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new ArchivedPage(postId, url, charset.isEmpty() ? null : charset, fetchedAt, body);
+        }
+    }
+
+    /**
+     * A page as it was fetched. {@code charset} is the one declared by the server, if any.
+     */
+    public record ArchivedPage(long postId, String url, String charset, long fetchedAtMillis, byte[] body) {
+
+        public URI uri() {
+            return URI.create(url);
+        }
+    }
+
+    private static final class ActiveSegment {
+        private final int number;
+        private final Path dataPath;
+        private final Path indexPath;
+        private final FileChannel data;
+        private final FileChannel index;
+        private final Map<Long, long[]> entries = new HashMap<>();
+        private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        private long sizeBytes;
+
+        private ActiveSegment(int number, Path dataPath, Path indexPath, FileChannel data, FileChannel index) {
+            this.number = number;
+            this.dataPath = dataPath;
+            this.indexPath = indexPath;
+            this.data = data;
+            this.index = index;
+        }
+
+        static ActiveSegment create(Path dataPath, Path indexPath, int number) throws IOException {
+            FileChannel data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            return new ActiveSegment(number, dataPath, indexPath, data, index);
+        }
+
+        /**
+         * Continue an existing segment. Index entries that are torn or point past the data are dropped and the
+         * index is rewritten without them, so a later append cannot make a stale entry look valid.
+         */
+        static ActiveSegment reopen(Path dataPath, Path indexPath, int number) throws IOException {
+            long dataSize = Files.size(dataPath);
+            byte[] raw = Files.exists(indexPath) ? Files.readAllBytes(indexPath) : new byte[0];
+            FileChannel data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            ActiveSegment segment = new ActiveSegment(number, dataPath, indexPath, data, index);
+            ByteBuffer entries = ByteBuffer.wrap(raw);
+            ByteBuffer kept = ByteBuffer.allocate(raw.length - raw.length % INDEX_ENTRY_BYTES);
+            for (int i = 0; i < raw.length / INDEX_ENTRY_BYTES; i++) {
+                long id = entries.getLong();
+                long offset = entries.getLong();
+                int length = entries.getInt();
+                if (offset + length <= dataSize) {
+                    kept.putLong(id).putLong(offset).putInt(length);
+                    segment.entries.put(id, new long[]{offset, length});
+                }
+            }
+            kept.flip();
+            index.truncate(0);
+            while (kept.hasRemaining()) {
+                index.write(kept);
+            }
+            // Bytes past the last indexed record were never referenced; appending after them is harmless.
+            segment.sizeBytes = dataSize;
+            return segment;
+        }
+
+        void append(long postId, byte[] record) throws IOException {
+            long offset = sizeBytes;
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                data.write(buffer, offset + buffer.position());
+            }
+            indexEntry.clear();
+            indexEntry.putLong(postId).putLong(offset).putInt(record.length).flip();
+            while (indexEntry.hasRemaining()) {
+                index.write(indexEntry);
+            }
+            sizeBytes += record.length;
+            entries.put(postId, new long[]{offset, record.length});
+        }
+
+        byte[] read(long postId) throws IOException {
+            long[] entry = entries.get(postId);
+            if (entry == null) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) entry[1]);
+            while (buffer.hasRemaining()) {
+                if (data.read(buffer, entry[0] + buffer.position()) < 0) {
+                    throw new IOException("Archive segment " + number + " truncated");
+                }
+            }
+            return buffer.array();
+        }
+
+        void close() {
+            try {
+                data.force(false);
+                index.force(false);
+                data.close();
+                index.close();
+            } catch (IOException ex) {
+                log.warn("Could not close archive segment {}: {}", number, ex.getMessage());
+            }
+        }
+    }
+
+    private static final class SealedSegment {
+        private final int number;
+        private final Path dataPath;
+        private final Path indexPath;
+        private final long sizeBytes;
+        // Sorted by id, one entry per post; searched with binary search.
+        private final long[] ids;
+        private final long[] offsets;
+        private final int[] lengths;
+
+        private SealedSegment(int number, Path dataPath, Path indexPath, long sizeBytes,
+                              long[] ids, long[] offsets, int[] lengths) {
+            this.number = number;
+            this.dataPath = dataPath;
+            this.indexPath = indexPath;
+            this.sizeBytes = sizeBytes;
+            this.ids = ids;
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+
+        static SealedSegment load(Path dataPath, Path indexPath, int number) throws IOException {
+            long dataSize = Files.size(dataPath);
+            byte[] raw = Files.exists(indexPath) ? Files.readAllBytes(indexPath) : new byte[0];
+            // A torn final entry (crash mid-write) is ignored, as are entries pointing past the data.
+            int count = raw.length / INDEX_ENTRY_BYTES;
+            ByteBuffer buffer = ByteBuffer.wrap(raw);
+            long[][] entries = new long[count][];
+            int valid = 0;
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                if (offset + length <= dataSize) {
+                    entries[valid++] = new long[]{id, offset, length};
+                }
+            }
+            long[][] sorted = Arrays.copyOf(entries, valid);
+            // By id, then newest (highest offset) last so the dedupe below keeps the latest copy.
+            Arrays.sort(sorted, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+            long[] ids = new long[valid];
+            long[] offsets = new long[valid];
+            int[] lengths = new int[valid];
+            int size = 0;
+            for (long[] entry : sorted) {
+                if (size > 0 && ids[size - 1] == entry[0]) {
+                    size--;
+                }
+                ids[size] = entry[0];
+                offsets[size] = entry[1];
+                lengths[size] = (int) entry[2];
+                size++;
+            }
+            return new SealedSegment(number, dataPath, indexPath, dataSize,
+                    Arrays.copyOf(ids, size), Arrays.copyOf(offsets, size), Arrays.copyOf(lengths, size));
+        }
+
+        /**
+         * @return the post's slot, or a negative number if the segment does not hold it
+         */
+        int find(long postId) {
+            return Arrays.binarySearch(ids, postId);
+        }
+
+        // slice() leaves the shared buffer's position alone, so concurrent readers need no further locking.
+        byte[] read(int slot, MappedByteBuffer mapped) {
+            byte[] record = new byte[lengths[slot]];
+            mapped.slice((int) offsets[slot], lengths[slot]).get(record);
+            return record;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Source;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled link filters for each source: its include and exclude {@link LinkPatternMatcher}s and the
+ * selector of the listing container whose anchors are scanned. Like {@link SelectorRegistry}, entries are
+ * dropped on {@link SourceChangedEvent}; an edit made on another node is noticed because the cached entry
+ * keeps the raw settings it was compiled from.
+ */
+@Component
+public class LinkFilterRegistry {
+    private static final Logger log = LoggerFactory.getLogger(LinkFilterRegistry.class);
+
+    private static final LinkFilter DEFAULTS = new LinkFilter(null, null, null,
+            LinkPatternMatcher.EMPTY, LinkPatternMatcher.EMPTY, null);
+
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final Map<Long, LinkFilter> compiled = new ConcurrentHashMap<>();
+
+    public LinkFilterRegistry(UrlCanonicalizer urlCanonicalizer) {
+        this.urlCanonicalizer = urlCanonicalizer;
+    }
+
+    public LinkFilter forSource(Source source) {
+        if (source == null || source.getId() == null) {
+            return DEFAULTS;
+        }
+        LinkFilter cached = compiled.get(source.getId());
+        if (cached != null && cached.isCompiledFrom(source)) {
+            return cached;
+        }
+        LinkFilter fresh = new LinkFilter(source.getLinkIncludePatterns(),
+                source.getLinkExcludePatterns(),
+                source.getLinkContainerSelector(),
+                LinkPatternMatcher.compile(source.getLinkIncludePatterns(), urlCanonicalizer),
+                LinkPatternMatcher.compile(source.getLinkExcludePatterns(), urlCanonicalizer),
+                compileContainer(source));
+        compiled.put(source.getId(), fresh);
+        return fresh;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the container selector cannot be parsed
+     */
+    public void validate(String linkContainerSelector) {
+        if (!StringUtils.hasText(linkContainerSelector)) {
+            return;
+        }
+        try {
+            QueryParser.parse(linkContainerSelector.trim());
+        } catch (Selector.SelectorParseException | IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Listing container selector '" + linkContainerSelector.trim()
+                    + "' is invalid: " + ex.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onSourceChanged(SourceChangedEvent event) {
+        if (event.sourceId() != null) {
+            compiled.remove(event.sourceId());
+        }
+    }
+
+    private Evaluator compileContainer(Source source) {
+        String selector = source.getLinkContainerSelector();
+        if (!StringUtils.hasText(selector)) {
+            return null;
+        }
+        try {
+            return QueryParser.parse(selector.trim());
+        } catch (Selector.SelectorParseException | IllegalArgumentException ex) {
+            log.warn("Source {} has an invalid listing container selector '{}': {}", source.getId(), selector, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Which links a source accepts. A null container scans every anchor on the page.
+     */
+    public record LinkFilter(String includeSource,
+                             String excludeSource,
+                             String containerSource,
+                             LinkPatternMatcher includes,
+                             LinkPatternMatcher excludes,
+                             Evaluator container) {
+
+        public boolean hasIncludes() {
+            return !includes.isEmpty();
+        }
+
+        /**
+         * Not excluded, and matched by an include pattern when there are any.
+         */
+        public boolean accepts(String url) {
+            return !excludes.matches(url) && (includes.isEmpty() || includes.matches(url));
+        }
+
+        private boolean isCompiledFrom(Source source) {
+            return Objects.equals(includeSource, source.getLinkIncludePatterns())
+                    && Objects.equals(excludeSource, source.getLinkExcludePatterns())
+                    && Objects.equals(containerSource, source.getLinkContainerSelector());
+        }
+    }
+}
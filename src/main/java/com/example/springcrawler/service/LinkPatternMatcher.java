@@ -0,0 +1,202 @@
+package com.example.springcrawler.service;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A set of URL glob patterns compiled once and tested against every link a listing page or feed yields.
+ * A pattern is matched against the whole URL, or against the path and query when it starts with {@code /};
+ * {@code *} stands for any run of characters (slashes included) and everything else is literal, so
+ * {@code ?} in a pattern is the query separator. Patterns without a {@code *} are looked up in a hash set;
+ * the others are split on {@code *} into literal segments that are found left to right with
+ * {@code indexOf}. For globs whose only wildcard is {@code *} the leftmost match of each segment is always
+ * good enough, so no input ever makes the matcher backtrack.
+ * <p>
+ * Links are matched in their {@link UrlCanonicalizer canonical} form, so full-URL patterns are brought to it
+ * when compiled: a pattern without {@code *} is canonicalized as a whole, and for the others the scheme and
+ * host are, which turns an admin-entered {@code http://Example.com/news/*} into {@code https://example.com/news/*}
+ * when {@code https} is forced.
+ */
+public final class LinkPatternMatcher {
+    static final LinkPatternMatcher EMPTY = new LinkPatternMatcher(Set.of(), List.of(), Set.of(), List.of());
+
+    private final Set<String> exactUrls;
+    private final List<Glob> urlGlobs;
+    private final Set<String> exactPaths;
+    private final List<Glob> pathGlobs;
+
+    private LinkPatternMatcher(Set<String> exactUrls, List<Glob> urlGlobs, Set<String> exactPaths, List<Glob> pathGlobs) {
+        this.exactUrls = exactUrls;
+        this.urlGlobs = urlGlobs;
+        this.exactPaths = exactPaths;
+        this.pathGlobs = pathGlobs;
+    }
+
+    /**
+     * @param patterns patterns separated by new lines or whitespace; null or blank gives {@link #EMPTY}
+     */
+    public static LinkPatternMatcher compile(String patterns, UrlCanonicalizer canonicalizer) {
+        List<String> parts = split(patterns);
+        if (parts.isEmpty()) {
+            return EMPTY;
+        }
+        Set<String> exactUrls = new HashSet<>();
+        List<Glob> urlGlobs = new ArrayList<>();
+        Set<String> exactPaths = new HashSet<>();
+        List<Glob> pathGlobs = new ArrayList<>();
+        for (String part : parts) {
+            boolean path = part.charAt(0) == '/';
+            String pattern = path ? part : canonicalOrigin(part, canonicalizer);
+            if (pattern.indexOf('*') < 0) {
+                (path ? exactPaths : exactUrls).add(pattern);
+            } else {
+                (path ? pathGlobs : urlGlobs).add(Glob.compile(pattern));
+            }
+        }
+        return new LinkPatternMatcher(Set.copyOf(exactUrls), List.copyOf(urlGlobs),
+                Set.copyOf(exactPaths), List.copyOf(pathGlobs));
+    }
+
+    /**
+     * Patterns in their stored form: trimmed, blank ones dropped, in the order given.
+     */
+    public static List<String> split(String patterns) {
+        List<String> parts = new ArrayList<>();
+        if (!StringUtils.hasText(patterns)) {
+            return parts;
+        }
+        for (String part : patterns.trim().split("\\s+")) {
+            if (!part.isEmpty()) {
+                parts.add(part);
+            }
+        }
+        return parts;
+    }
+
+    public boolean isEmpty() {
+        return exactUrls.isEmpty() && urlGlobs.isEmpty() && exactPaths.isEmpty() && pathGlobs.isEmpty();
+    }
+
+    public boolean matches(String url) {
+        if (url == null) {
+            return false;
+        }
+        if (exactUrls.contains(url)) {
+            return true;
+        }
+        for (Glob glob : urlGlobs) {
+            if (glob.matches(url, 0)) {
+                return true;
+            }
+        }
+        if (exactPaths.isEmpty() && pathGlobs.isEmpty()) {
+            return false;
+        }
+        int pathStart = pathStart(url);
+        if (!exactPaths.isEmpty() && exactPaths.contains(pathStart < url.length() ? url.substring(pathStart) : "/")) {
+            return true;
+        }
+        for (Glob glob : pathGlobs) {
+            if (pathStart < url.length() ? glob.matches(url, pathStart) : glob.matches("/", 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Only the scheme and host are touched in a glob, since canonicalizing its path could drop a trailing
+    // slash and widen the pattern. A pattern that is not an http(s) URL is kept as written.
+    private static String canonicalOrigin(String pattern, UrlCanonicalizer canonicalizer) {
+        int scheme = pattern.indexOf("://");
+        if (scheme <= 0 || pattern.lastIndexOf('*', scheme) >= 0) {
+            return pattern;
+        }
+        if (pattern.indexOf('*') < 0) {
+            String canonical = canonicalizer.canonicalize(pattern);
+            return canonical != null ? canonical : pattern;
+        }
+        int authorityEnd = scheme + 3;
+        while (authorityEnd < pattern.length() && "/?".indexOf(pattern.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        if (pattern.lastIndexOf('*', authorityEnd - 1) < scheme) {
+            String origin = canonicalizer.canonicalize(pattern.substring(0, authorityEnd) + "/");
+            return origin != null ? origin.substring(0, origin.length() - 1) + pattern.substring(authorityEnd) : pattern;
+        }
+        // A wildcard in the host, as in "http://*.example.com/*": lower-case what is there and fold the scheme.
+        String prefix = pattern.substring(0, authorityEnd).toLowerCase(Locale.ROOT);
+        if (prefix.startsWith("http://") && canonicalizer.isForceHttps()) {
+            prefix = "https://" + prefix.substring(7);
+        }
+        return prefix + pattern.substring(authorityEnd);
+    }
+
+    // Index of the first '/' after the authority, or the URL's length when it has no path.
+    private static int pathStart(String url) {
+        int scheme = url.indexOf("://");
+        int authority = scheme < 0 ? 0 : scheme + 3;
+        for (int i = authority; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/') {
+                return i;
+            }
+            if (c == '?' || c == '#') {
+                return url.length();
+            }
+        }
+        return url.length();
+    }
+
+    /**
+     * Literal segments between the {@code *}s of one pattern. The first must sit at the start and the last
+     * at the end unless the pattern begins or ends with {@code *}.
+     */
+    private record Glob(String[] segments, boolean anchoredStart, boolean anchoredEnd) {
+
+        private static Glob compile(String pattern) {
+            List<String> segments = new ArrayList<>();
+            for (String segment : pattern.split("\\*+")) {
+                if (!segment.isEmpty()) {
+                    segments.add(segment);
+                }
+            }
+            return new Glob(segments.toArray(String[]::new), pattern.charAt(0) != '*',
+                    pattern.charAt(pattern.length() - 1) != '*');
+        }
+
+        private boolean matches(String value, int from) {
+            int pos = from;
+            int end = value.length();
+            int first = 0;
+            int last = segments.length;
+            if (anchoredStart) {
+                if (!value.startsWith(segments[0], pos)) {
+                    return false;
+                }
+                pos += segments[0].length();
+                first = 1;
+            }
+            if (anchoredEnd && last > first) {
+                String tail = segments[last - 1];
+                if (end - tail.length() < pos || !value.startsWith(tail, end - tail.length())) {
+                    return false;
+                }
+                end -= tail.length();
+                last--;
+            }
+            for (int i = first; i < last; i++) {
+                int found = value.indexOf(segments[i], pos);
+                if (found < 0 || found + segments[i].length() > end) {
+                    return false;
+                }
+                pos = found + segments[i].length();
+            }
+            return true;
+        }
+    }
+}
@@ -2,27 +2,77 @@ package com.example.springcrawler.service;
 
 import com.example.springcrawler.model.Category;
 import com.example.springcrawler.model.Post;
+import com.example.springcrawler.model.Source;
 import com.example.springcrawler.repository.CategoryRepository;
 import com.example.springcrawler.repository.PostRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class PostService {
+    private static final int URL_LOOKUP_CHUNK_SIZE = 500;
+    private static final int INSERT_CHUNK_SIZE = 500;
+    private static final long REPAIR_ID_RANGE = 10_000;
+    private static final String ENQUEUE_INSERT_PREFIX = "INSERT IGNORE INTO posts " +
+            "(crawl_url, source_url, title, short_description, img_url, published_at, status, category_id, source_id, " +
+            "unique_content, attempt_count, next_attempt_at, created_at, updated_at) VALUES ";
+    private static final String ENQUEUE_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int ENQUEUE_COLUMNS = 14;
+    static final int MAX_VARCHAR = 255;
+    private static final String SAVE_CRAWLED_SQL = "UPDATE posts SET title = ?, content = ?, short_description = ?, img_url = ?, " +
+            "source_url = ?, canonical_url = ?, status = ?, claimed_by = NULL, lease_expires_at = NULL, last_error = NULL, next_attempt_at = NULL, " +
+            "updated_at = ? WHERE id = ? AND claimed_by = ? AND status = ?";
+    private static final String RECORD_FAILURE_SQL = "UPDATE posts SET status = ?, last_error = ?, next_attempt_at = ?, " +
+            "claimed_by = NULL, lease_expires_at = NULL, updated_at = ? WHERE id = ? AND claimed_by = ? AND status = ?";
+    // Fields the new selectors could not find keep their previous value.
+    private static final String SAVE_REEXTRACTED_SQL = "UPDATE posts SET title = COALESCE(?, title), content = COALESCE(?, content), " +
+            "short_description = COALESCE(?, short_description), img_url = COALESCE(?, img_url), updated_at = ? " +
+            "WHERE id = ? AND status = ?";
+
     private final PostRepository postRepository;
     private final CategoryRepository categoryRepository;
+    private final SeenUrlFilter seenUrlFilter;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int maxCrawlAttempts;
+    private final Duration retryBaseDelay;
+    private final Duration retryMaxDelay;
 
-    public PostService(PostRepository postRepository, CategoryRepository categoryRepository) {
+    public PostService(PostRepository postRepository,
+                       CategoryRepository categoryRepository,
+                       SeenUrlFilter seenUrlFilter,
+                       JdbcTemplate jdbcTemplate,
+                       ApplicationEventPublisher eventPublisher,
+                       @Value("${crawler.retry.max-attempts:5}") int maxCrawlAttempts,
+                       @Value("${crawler.retry.base-delay-seconds:60}") long retryBaseDelaySeconds,
+                       @Value("${crawler.retry.max-delay-seconds:21600}") long retryMaxDelaySeconds) {
         this.postRepository = postRepository;
         this.categoryRepository = categoryRepository;
+        this.seenUrlFilter = seenUrlFilter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.maxCrawlAttempts = Math.max(1, maxCrawlAttempts);
+        this.retryBaseDelay = Duration.ofSeconds(Math.max(1, retryBaseDelaySeconds));
+        this.retryMaxDelay = Duration.ofSeconds(Math.max(retryBaseDelaySeconds, retryMaxDelaySeconds));
     }
 
     // Fetch all posts
@@ -42,16 +92,175 @@ public class PostService {
         return postRepository.findById(id).orElse(null);
     }
 
-    public Post getPostByCrawlUrl(String url) {
-        return postRepository.findPostByCrawlUrl(url).orElse(null);
+    /**
+     * Return the subset of {@code urls} that no post uses as its crawl URL or declares as its canonical URL
+     * yet, checked with one {@code IN} query per {@value #URL_LOOKUP_CHUNK_SIZE} URLs instead of one query per
+     * link. URLs the seen-URL filter has never seen skip the crawl URL half of the check: if another node
+     * stored one in the meantime, the unique index turns its insert into a no-op. Canonical URLs have no such
+     * index, so they are always looked up in the database.
+     */
+    public CrawlUrlLookup findNewCrawlUrls(Collection<String> urls) {
+        Set<String> candidates = new LinkedHashSet<>(urls);
+        if (candidates.isEmpty()) {
+            return new CrawlUrlLookup(candidates, 0, 0, 0);
+        }
+        int distinct = candidates.size();
+        List<String> maybeSeen = new ArrayList<>();
+        List<String> cleared = new ArrayList<>();
+        for (String url : candidates) {
+            if (seenUrlFilter.mightContain(url)) {
+                maybeSeen.add(url);
+            } else {
+                cleared.add(url);
+            }
+        }
+        int queries = 0;
+        for (int from = 0; from < maybeSeen.size(); from += URL_LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = maybeSeen.subList(from, Math.min(from + URL_LOOKUP_CHUNK_SIZE, maybeSeen.size()));
+            for (Object[] row : postRepository.findKnownUrls(chunk)) {
+                candidates.remove((String) row[0]);
+                if (row[1] != null) {
+                    candidates.remove((String) row[1]);
+                }
+            }
+            queries++;
+        }
+        for (int from = 0; from < cleared.size(); from += URL_LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = cleared.subList(from, Math.min(from + URL_LOOKUP_CHUNK_SIZE, cleared.size()));
+            candidates.removeAll(postRepository.findKnownCanonicalUrls(chunk));
+            queries++;
+        }
+        return new CrawlUrlLookup(candidates, distinct, distinct - maybeSeen.size(), queries);
     }
-    public List<Post> getUnCrawlPosts() {
-        Pageable pageable = PageRequest.of(0, 10, Sort.by("createdAt").descending());
-        return postRepository.findUncrawledPosts(Post.Status.UNCRAWL.name(), pageable);
+
+    /**
+     * Queue newly discovered links as UNCRAWL posts using multi-row {@code INSERT IGNORE} statements of up to
+     * {@value #INSERT_CHUNK_SIZE} rows. The canonical URL goes into {@code crawl_url}, whose unique index makes
+     * a URL that another discoverer stored first a no-op instead of a duplicate row; the fetch form goes into
+     * {@code source_url}. URLs longer than the {@code crawl_url} column are skipped rather than stored truncated.
+     * <p>
+     * The title, description, image and publication date a feed or sitemap gave for a link are stored as well.
+     * Rows with such fields get a {@code next_attempt_at}, which keeps the content repair from treating them as
+     * already crawled.
+     *
+     * @return the number of rows actually inserted
+     */
+    public int enqueueDiscoveredItems(Source source, Collection<DiscoveredLink> links) {
+        if (source == null || links == null || links.isEmpty()) {
+            return 0;
+        }
+        Map<String, DiscoveredLink> byUrl = new LinkedHashMap<>();
+        for (DiscoveredLink link : links) {
+            // INSERT IGNORE would store an overlong URL cut off at the column width, which then 404s forever.
+            if (link.url() != null && link.url().length() <= MAX_VARCHAR) {
+                byUrl.putIfAbsent(link.url(), link);
+            }
+        }
+        List<DiscoveredLink> distinct = new ArrayList<>(byUrl.values());
+        Long categoryId = source.getCategory() != null ? source.getCategory().getId() : null;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int inserted = 0;
+        for (int from = 0; from < distinct.size(); from += INSERT_CHUNK_SIZE) {
+            List<DiscoveredLink> chunk = distinct.subList(from, Math.min(from + INSERT_CHUNK_SIZE, distinct.size()));
+            StringBuilder sql = new StringBuilder(ENQUEUE_INSERT_PREFIX.length() + chunk.size() * (ENQUEUE_ROW.length() + 2))
+                    .append(ENQUEUE_INSERT_PREFIX);
+            Object[] args = new Object[chunk.size() * ENQUEUE_COLUMNS];
+            int arg = 0;
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(ENQUEUE_ROW);
+                DiscoveredLink link = chunk.get(i);
+                args[arg++] = link.url();
+                args[arg++] = link.sourceUrl();
+                args[arg++] = truncate(link.title(), MAX_VARCHAR);
+                args[arg++] = link.description();
+                // A cut-off image URL is useless, so an overlong one is left for the extractor instead.
+                args[arg++] = link.imageUrl() != null && link.imageUrl().length() <= MAX_VARCHAR ? link.imageUrl() : null;
+                args[arg++] = link.publishedAt() != null ? Timestamp.valueOf(link.publishedAt()) : null;
+                args[arg++] = Post.Status.UNCRAWL.name();
+                args[arg++] = categoryId;
+                args[arg++] = source.getId();
+                args[arg++] = false;
+                args[arg++] = 0;
+                args[arg++] = link.hasPrefill() ? now : null;
+                args[arg++] = now;
+                args[arg++] = now;
+            }
+            inserted += jdbcTemplate.update(sql.toString(), args);
+            chunk.forEach(link -> seenUrlFilter.put(link.url()));
+        }
+        if (inserted > 0) {
+            eventPublisher.publishEvent(new PostsEnqueuedEvent(source.getId(), inserted));
+        }
+        return inserted;
     }
-    public List<Post> getUnCrawlPosts(int limit) {
-        Pageable pageable = PageRequest.of(0, limit);
-        return postRepository.findUncrawledPosts(Post.Status.UNCRAWL.name(), pageable);
+
+    /**
+     * Atomically lease up to {@code limit} UNCRAWL posts to {@code workerId}. Rows locked by another node's
+     * claim are skipped rather than waited on, and rows whose lease has expired are handed out again, so
+     * any number of crawler instances can drain the same backlog.
+     */
+    @Transactional
+    public List<Post> claimUncrawlPosts(String workerId, int limit, Duration leaseDuration) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = postRepository.lockClaimableIds(Post.Status.UNCRAWL.name(), now, limit);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        postRepository.claim(ids, workerId, now.plus(leaseDuration));
+        return postRepository.findAllById(ids);
+    }
+
+    /**
+     * Record failed fetches for claimed posts as one JDBC batch and release their leases. Each post is retried
+     * after an exponential backoff based on its attempt count, or marked FAILED once it is out of attempts or
+     * the error is permanent. As with {@link #saveCrawledPosts(List)}, a row is only written while it is still
+     * UNCRAWL and claimed by the same worker.
+     *
+     * @return the posts that were not written because their lease or status had changed
+     */
+    @Transactional
+    public List<Post> recordCrawlFailures(List<CrawlFailure> failures) {
+        if (failures.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp updatedAt = Timestamp.valueOf(now);
+        for (CrawlFailure failure : failures) {
+            Post post = failure.post();
+            Post.Status status = Post.Status.UNCRAWL;
+            LocalDateTime nextAttemptAt = null;
+            if (failure.permanent() || post.getAttemptCount() >= maxCrawlAttempts) {
+                status = Post.Status.FAILED;
+            } else {
+                int exponent = Math.min(Math.max(post.getAttemptCount() - 1, 0), 30);
+                Duration delay = retryBaseDelay.multipliedBy(1L << exponent);
+                nextAttemptAt = now.plus(delay.compareTo(retryMaxDelay) > 0 ? retryMaxDelay : delay);
+            }
+            post.setStatus(status);
+            post.setLastError(failure.error());
+            post.setNextAttemptAt(nextAttemptAt);
+            post.setUpdatedAt(now);
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(RECORD_FAILURE_SQL, failures, failures.size(), (ps, failure) -> {
+            Post post = failure.post();
+            ps.setString(1, post.getStatus().name());
+            ps.setString(2, truncate(post.getLastError(), 500));
+            ps.setTimestamp(3, post.getNextAttemptAt() != null ? Timestamp.valueOf(post.getNextAttemptAt()) : null);
+            ps.setTimestamp(4, updatedAt);
+            ps.setLong(5, post.getId());
+            ps.setString(6, post.getClaimedBy());
+            ps.setString(7, Post.Status.UNCRAWL.name());
+        });
+        List<Post> posts = failures.stream().map(CrawlFailure::post).toList();
+        List<Post> stale = unwritten(counts, posts);
+        for (Post post : posts) {
+            post.setClaimedBy(null);
+            post.setLeaseExpiresAt(null);
+        }
+        return stale;
     }
 
     public List<Post> getPostsByStatus(Post.Status status) {
@@ -111,6 +320,101 @@ public class PostService {
         promoteStatusIfContentPresent(post);
         post.setUpdatedAt(LocalDateTime.now());
         postRepository.save(post);
+        if (post.getCrawlUrl() != null) {
+            seenUrlFilter.put(post.getCrawlUrl());
+        }
+    }
+
+    /**
+     * Write a batch of crawled posts as one JDBC batch in a single transaction, releasing their leases.
+     * Only the columns the crawler fills are updated, so no entities are merged or reloaded. A row is only
+     * written while it is still UNCRAWL and claimed by the same worker: a result that arrives after the lease
+     * expired and another node claimed the post, or after an admin published or deleted it, is dropped.
+     *
+     * @return the posts that were not written for that reason
+     */
+    @Transactional
+    public List<Post> saveCrawledPosts(List<Post> posts) {
+        if (posts.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp updatedAt = Timestamp.valueOf(now);
+        for (Post post : posts) {
+            promoteStatusIfContentPresent(post);
+            post.setUpdatedAt(now);
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(SAVE_CRAWLED_SQL, posts, posts.size(), (ps, post) -> {
+            ps.setString(1, post.getTitle());
+            ps.setString(2, post.getContent());
+            ps.setString(3, post.getShortDescription());
+            ps.setString(4, post.getImgUrl());
+            ps.setString(5, post.getSourceUrl());
+            ps.setString(6, post.getCanonicalUrl());
+            ps.setString(7, post.getStatus().name());
+            ps.setTimestamp(8, updatedAt);
+            ps.setLong(9, post.getId());
+            ps.setString(10, post.getClaimedBy());
+            ps.setString(11, Post.Status.UNCRAWL.name());
+        });
+        List<Post> stale = unwritten(counts, posts);
+        for (Post post : posts) {
+            post.setClaimedBy(null);
+            post.setLeaseExpiresAt(null);
+            if (post.getCrawlUrl() != null) {
+                seenUrlFilter.put(post.getCrawlUrl());
+            }
+            if (post.getCanonicalUrl() != null) {
+                seenUrlFilter.put(post.getCanonicalUrl());
+            }
+        }
+        return stale;
+    }
+
+    public List<Long> findCrawledPostIds(Long sourceId, long afterId, int limit) {
+        return postRepository.findIdsBySourceAfterId(sourceId, Post.Status.CRAWLED, afterId, PageRequest.of(0, limit));
+    }
+
+    public long countCrawledPosts(Long sourceId, long afterId) {
+        return postRepository.countBySourceAfterId(sourceId, Post.Status.CRAWLED, afterId);
+    }
+
+    /**
+     * Overwrite the extracted fields of CRAWLED posts in one JDBC batch. Posts that were published or
+     * deleted in the meantime are not touched.
+     */
+    @Transactional
+    public void saveReextractedContent(Map<Long, ArticleExtractor.ExtractedArticle> articles) {
+        if (articles.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Map.Entry<Long, ArticleExtractor.ExtractedArticle>> rows = new ArrayList<>(articles.entrySet());
+        jdbcTemplate.batchUpdate(SAVE_REEXTRACTED_SQL, rows, rows.size(), (ps, row) -> {
+            ArticleExtractor.ExtractedArticle article = row.getValue();
+            ps.setString(1, article.title());
+            ps.setString(2, article.content());
+            ps.setString(3, article.shortDescription());
+            ps.setString(4, article.imageUrl());
+            ps.setTimestamp(5, now);
+            ps.setLong(6, row.getKey());
+            ps.setString(7, Post.Status.CRAWLED.name());
+        });
+    }
+
+    /**
+     * Release claimed posts without fetching them and keep them out of claims until {@code until}, e.g. while
+     * their host's circuit is open. The claim's attempt is not counted.
+     */
+    public int parkPosts(Collection<Long> ids, LocalDateTime until) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return postRepository.park(ids, Post.Status.UNCRAWL, until, LocalDateTime.now());
+    }
+
+    public List<Post> getPostsByIds(Collection<Long> ids) {
+        return ids.isEmpty() ? List.of() : postRepository.findAllById(ids);
     }
 
     // Delete a post
@@ -120,17 +424,22 @@ public class PostService {
 
     /**
      * Promote any legacy UNCRAWL posts that already have crawled data but never had their status flipped.
+     * Runs as bulk UPDATEs over id ranges of {@value #REPAIR_ID_RANGE} so no entities are loaded and no
+     * single statement locks the whole table. Posts deliberately queued for a re-crawl carry a next attempt
+     * time and are left alone.
      * Returns the number of posts updated so callers can log/monitor repairs.
      */
     public int promoteUncrawlPostsWithContent() {
-        List<Post> uncrawled = postRepository.findByStatusOrderByCreatedAtDesc(Post.Status.UNCRAWL);
+        Long minId = postRepository.findMinIdByStatus(Post.Status.UNCRAWL);
+        Long maxId = postRepository.findMaxIdByStatus(Post.Status.UNCRAWL);
+        if (minId == null || maxId == null) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
         int updated = 0;
-        for (Post post : uncrawled) {
-            if (hasCrawledPayload(post)) {
-                post.setStatus(Post.Status.CRAWLED);
-                savePost(post);
-                updated++;
-            }
+        for (long fromId = minId - 1; fromId < maxId; fromId += REPAIR_ID_RANGE) {
+            updated += postRepository.promoteStatusWhereContentPresent(Post.Status.UNCRAWL, Post.Status.CRAWLED,
+                    fromId, fromId + REPAIR_ID_RANGE, now);
         }
         return updated;
     }
@@ -141,6 +450,28 @@ public class PostService {
         }
     }
 
+    // SUCCESS_NO_INFO from a rewritten batch says nothing either way; only an explicit 0 is a miss.
+    private static List<Post> unwritten(int[][] counts, List<Post> posts) {
+        List<Post> unwritten = new ArrayList<>();
+        int index = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                if (count == 0) {
+                    unwritten.add(posts.get(index));
+                }
+                index++;
+            }
+        }
+        return unwritten;
+    }
+
+    static String truncate(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        return value.substring(0, maxLength);
+    }
+
     private boolean hasCrawledPayload(Post post) {
         if (post == null) {
             return false;
@@ -150,4 +481,42 @@ public class PostService {
                 StringUtils.hasText(post.getShortDescription()) ||
                 StringUtils.hasText(post.getImgUrl());
     }
+
+    /**
+     * A link found during discovery, with whatever the feed or sitemap already said about the article.
+     * {@code url} is the canonical form that identifies the post; {@code fetchUrl} is the form it was found in,
+     * stored as the post's source URL and fetched. A null {@code fetchUrl} means the two are the same.
+     */
+    public record DiscoveredLink(String url, String fetchUrl, String title, String description, String imageUrl,
+                                 LocalDateTime publishedAt) {
+
+        public static DiscoveredLink of(String url, String fetchUrl) {
+            return new DiscoveredLink(url, fetchUrl, null, null, null, null);
+        }
+
+        DiscoveredLink withUrls(String url, String fetchUrl) {
+            return new DiscoveredLink(url, fetchUrl, title, description, imageUrl, publishedAt);
+        }
+
+        String sourceUrl() {
+            return fetchUrl != null && fetchUrl.length() <= MAX_VARCHAR ? fetchUrl : url;
+        }
+
+        boolean hasPrefill() {
+            return StringUtils.hasText(title) || StringUtils.hasText(description) || StringUtils.hasText(imageUrl);
+        }
+    }
+
+    /**
+     * A failed fetch of a claimed post; {@code permanent} failures are not retried.
+     */
+    public record CrawlFailure(Post post, String error, boolean permanent) {
+    }
+
+    /**
+     * Result of a batched crawl URL lookup: the URLs not yet stored, how many distinct URLs were checked,
+     * how many of those the seen-URL filter cleared without a query, and how many queries the check took.
+     */
+    public record CrawlUrlLookup(Set<String> newUrls, int checkedCount, int filterSkippedCount, int queryCount) {
+    }
 }
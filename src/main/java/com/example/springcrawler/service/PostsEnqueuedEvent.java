@@ -0,0 +1,7 @@
+package com.example.springcrawler.service;
+
+/**
+ * Published after new UNCRAWL posts have been inserted.
+ */
+public record PostsEnqueuedEvent(Long sourceId, int count) {
+}
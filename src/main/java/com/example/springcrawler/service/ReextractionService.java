@@ -0,0 +1,292 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Post;
+import com.example.springcrawler.model.Source;
+import jakarta.annotation.PreDestroy;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-runs a source's current selectors over its CRAWLED posts after the selectors change.
+ * Pages are read from the {@link HtmlArchive} and extracted in parallel on a dedicated fork-join pool,
+ * one chunk at a time, and each chunk is written back as one JDBC batch. Posts with no archived copy are fetched
+ * again through the {@link ArticleCrawlPipeline} and keep their status and current content throughout: only a
+ * successful extraction replaces it, and a failed fetch leaves the post as it was. The last finished post id is
+ * stored on the source after every chunk, so a restart resumes where the job stopped. Jobs run one at a time on
+ * their own thread and pool; only the re-fetches share the crawl's per-host limits.
+ */
+@Service
+public class ReextractionService {
+    private static final Logger log = LoggerFactory.getLogger(ReextractionService.class);
+
+    private final PostService postService;
+    private final SourceService sourceService;
+    private final HtmlArchive htmlArchive;
+    private final ArticleExtractor articleExtractor;
+    private final ArticleCrawlPipeline crawlPipeline;
+    private final int chunkSize;
+    private final ForkJoinPool extractPool;
+    private final ExecutorService coordinator;
+
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+
+    public ReextractionService(PostService postService,
+                               SourceService sourceService,
+                               HtmlArchive htmlArchive,
+                               ArticleExtractor articleExtractor,
+                               ArticleCrawlPipeline crawlPipeline,
+                               @Value("${crawler.reextract.parallelism:0}") int parallelism,
+                               @Value("${crawler.reextract.chunk-size:200}") int chunkSize) {
+        this.postService = postService;
+        this.sourceService = sourceService;
+        this.htmlArchive = htmlArchive;
+        this.articleExtractor = articleExtractor;
+        this.crawlPipeline = crawlPipeline;
+        this.chunkSize = Math.max(1, chunkSize);
+        // Half the cores by default, leaving the rest to the live crawl's parse pool.
+        this.extractPool = new ForkJoinPool(parallelism > 0 ? parallelism
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        this.coordinator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reextract-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingJobs() {
+        for (Source source : sourceService.getActiveSources()) {
+            if (source.getReextractCursor() != null) {
+                schedule(source.getId());
+            }
+        }
+    }
+
+    @EventListener
+    public void onSourceChanged(SourceChangedEvent event) {
+        if (event.selectorsChanged()) {
+            schedule(event.sourceId());
+        }
+    }
+
+    /**
+     * Start a re-extraction of every CRAWLED post of the source, from the beginning.
+     *
+     * @return false if the source does not exist
+     */
+    public boolean start(Long sourceId) {
+        Source source = sourceService.getSourceById(sourceId);
+        if (source == null || source.isDeleted()) {
+            return false;
+        }
+        sourceService.updateReextractCursor(sourceId, 0L);
+        schedule(sourceId);
+        return true;
+    }
+
+    public List<JobStatus> getJobStatuses() {
+        List<JobStatus> statuses = new ArrayList<>(jobs.size());
+        for (Job job : jobs.values()) {
+            statuses.add(job.snapshot());
+        }
+        statuses.sort(Comparator.comparing(JobStatus::sourceId));
+        return statuses;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        extractPool.shutdownNow();
+        try {
+            coordinator.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule(Long sourceId) {
+        if (sourceId != null && scheduled.add(sourceId)) {
+            coordinator.execute(() -> {
+                scheduled.remove(sourceId);
+                run(sourceId);
+            });
+        }
+    }
+
+    private void run(Long sourceId) {
+        Source source = sourceService.getSourceById(sourceId);
+        if (source == null || source.isDeleted() || source.getReextractCursor() == null) {
+            return;
+        }
+        int version = SelectorRegistry.versionOf(source);
+        long cursor = source.getReextractCursor();
+        Job job = new Job(sourceId, postService.countCrawledPosts(sourceId, cursor));
+        jobs.put(sourceId, job);
+        log.info("Re-extracting {} posts of source {} (selector version {}, resuming after id {}).",
+                job.total, sourceId, version, cursor);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Source current = sourceService.getSourceById(sourceId);
+                if (current == null || current.isDeleted() || SelectorRegistry.versionOf(current) != version) {
+                    // A newer edit has already scheduled its own job from the start.
+                    job.state = "superseded";
+                    return;
+                }
+                List<Long> ids = postService.findCrawledPostIds(sourceId, cursor, chunkSize);
+                if (ids.isEmpty()) {
+                    sourceService.updateReextractCursor(sourceId, null);
+                    job.state = "done";
+                    log.info("Re-extraction of source {} finished: {} updated, {} re-fetched, {} failed.",
+                            sourceId, job.updated.get(), job.refetched.get(), job.failed.get());
+                    return;
+                }
+                processChunk(job, current, ids);
+                cursor = ids.get(ids.size() - 1);
+                sourceService.updateReextractCursor(sourceId, cursor);
+            }
+            job.state = "stopped";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.state = "stopped";
+        } catch (ExecutionException | RuntimeException ex) {
+            // The stored cursor is left in place, so the next start or restart resumes from here.
+            job.state = "failed";
+            log.error("Re-extraction of source {} stopped: {}", sourceId, ex.getMessage());
+        }
+    }
+
+    private void processChunk(Job job, Source source, List<Long> ids) throws InterruptedException, ExecutionException {
+        List<Outcome> outcomes = extractPool.submit(() -> ids.parallelStream()
+                .map(id -> reextract(id, source))
+                .toList()).get();
+
+        Map<Long, ArticleExtractor.ExtractedArticle> extracted = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Outcome outcome : outcomes) {
+            if (outcome.article() != null) {
+                extracted.put(outcome.postId(), outcome.article());
+            } else if (!outcome.failed()) {
+                missing.add(outcome.postId());
+            } else {
+                job.failed.incrementAndGet();
+            }
+        }
+        for (Outcome outcome : refetch(source, missing)) {
+            if (outcome.article() != null) {
+                extracted.put(outcome.postId(), outcome.article());
+                job.refetched.incrementAndGet();
+            } else {
+                job.failed.incrementAndGet();
+            }
+        }
+        postService.saveReextractedContent(extracted);
+        job.updated.addAndGet(extracted.size());
+        job.processed.addAndGet(ids.size());
+        job.meter.mark(ids.size());
+    }
+
+    // Fetched pages are extracted on the job's own pool; a failure only counts against the job.
+    private List<Outcome> refetch(Source source, List<Long> ids) throws InterruptedException, ExecutionException {
+        List<CompletableFuture<Outcome>> pending = new ArrayList<>(ids.size());
+        for (Post post : postService.getPostsByIds(ids)) {
+            pending.add(crawlPipeline.refetch(post, source)
+                    .thenApplyAsync(page -> new Outcome(post.getId(), extract(page, source), false), extractPool)
+                    .exceptionally(ex -> {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        log.warn("Could not re-fetch post {}: {}", post.getId(), cause.getMessage());
+                        return new Outcome(post.getId(), null, true);
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).get();
+        List<Outcome> outcomes = new ArrayList<>(pending.size());
+        for (CompletableFuture<Outcome> outcome : pending) {
+            outcomes.add(outcome.get());
+        }
+        return outcomes;
+    }
+
+    private ArticleExtractor.ExtractedArticle extract(CrawlHttpClient.FetchResult page, Source source) {
+        try {
+            return articleExtractor.extract(page, source);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Outcome reextract(Long postId, Source source) {
+        try {
+            Optional<HtmlArchive.ArchivedPage> page = htmlArchive.read(postId);
+            if (page.isEmpty()) {
+                return new Outcome(postId, null, false);
+            }
+            HtmlArchive.ArchivedPage archived = page.get();
+            Document doc = Jsoup.parse(new ByteArrayInputStream(archived.body()), archived.charset(), archived.url());
+            return new Outcome(postId, articleExtractor.extract(doc, source), false);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not re-extract post {}: {}", postId, ex.getMessage());
+            return new Outcome(postId, null, true);
+        }
+    }
+
+    private record Outcome(Long postId, ArticleExtractor.ExtractedArticle article, boolean failed) {
+    }
+
+    /**
+     * Progress of the latest job for a source. {@code total} counts the posts that were left when the job
+     * (or its resumption) started.
+     */
+    public record JobStatus(Long sourceId, String state, long total, long processed, long updated,
+                            long refetched, long failed, double perSecond) {
+
+        public String getRate() {
+            return String.format("%.1f", perSecond);
+        }
+    }
+
+    private static final class Job {
+        private final Long sourceId;
+        private final long total;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong updated = new AtomicLong();
+        private final AtomicLong refetched = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final ThroughputMeter meter = new ThroughputMeter(60);
+        private volatile String state = "running";
+
+        private Job(Long sourceId, long total) {
+            this.sourceId = sourceId;
+            this.total = total;
+        }
+
+        private JobStatus snapshot() {
+            return new JobStatus(sourceId, state, total, processed.get(), updated.get(), refetched.get(),
+                    failed.get(), meter.getRatePerSecond());
+        }
+    }
+}
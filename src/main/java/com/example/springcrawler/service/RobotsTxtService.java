@@ -0,0 +1,433 @@
+package com.example.springcrawler.service;
+
+import org.jsoup.HttpStatusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads and caches each origin's robots.txt. Rules are fetched once per origin and kept for
+ * {@code cache-ttl-seconds}; the allow/disallow patterns are compiled up front into literal segments, so
+ * checking a URL against them only scans the URL string. A {@code Crawl-delay} is handed to the
+ * {@link HostGuard}, which slows that host's token bucket to match.
+ * <p>
+ * A missing robots.txt (any 4xx) allows everything. If the file cannot be read (5xx, timeout), the last known
+ * rules stay in force, or everything is allowed if there are none, and the fetch is retried after
+ * {@code error-ttl-seconds}; this favours not losing discovered links over a strict reading of RFC 9309.
+ * <p>
+ * Expired entries are dropped by a periodic sweep, and at most {@code max-origins} are kept: past that, the
+ * entries closest to expiry make room.
+ */
+@Service
+public class RobotsTxtService {
+    private static final Logger log = LoggerFactory.getLogger(RobotsTxtService.class);
+    private static final int MAX_ROBOTS_BYTES = 512 * 1024;
+
+    private final CrawlHttpClient crawlHttpClient;
+    private final HostGuard hostGuard;
+    private final boolean enabled;
+    private final String agentToken;
+    private final long cacheTtlNanos;
+    private final long errorTtlNanos;
+    private final Duration maxCrawlDelay;
+    private final int maxOrigins;
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder disallowed = new LongAdder();
+
+    public RobotsTxtService(CrawlHttpClient crawlHttpClient,
+                            HostGuard hostGuard,
+                            @Value("${crawler.robots.enabled:true}") boolean enabled,
+                            @Value("${crawler.robots.user-agent:springcrawler}") String agentToken,
+                            @Value("${crawler.robots.cache-ttl-seconds:86400}") long cacheTtlSeconds,
+                            @Value("${crawler.robots.error-ttl-seconds:600}") long errorTtlSeconds,
+                            @Value("${crawler.robots.max-crawl-delay-seconds:60}") long maxCrawlDelaySeconds,
+                            @Value("${crawler.robots.max-origins:10000}") int maxOrigins) {
+        this.crawlHttpClient = crawlHttpClient;
+        this.hostGuard = hostGuard;
+        this.enabled = enabled;
+        this.agentToken = productToken(agentToken);
+        this.cacheTtlNanos = Duration.ofSeconds(Math.max(1, cacheTtlSeconds)).toNanos();
+        this.errorTtlNanos = Duration.ofSeconds(Math.max(1, errorTtlSeconds)).toNanos();
+        this.maxCrawlDelay = Duration.ofSeconds(Math.max(0, maxCrawlDelaySeconds));
+        this.maxOrigins = Math.max(1, maxOrigins);
+    }
+
+    public boolean isAllowed(String url) {
+        RobotsRules rules = rulesFor(url);
+        return rules.isAllowed(url);
+    }
+
+    /**
+     * Rules for the URL's origin, fetching robots.txt on a cache miss. Callers checking many URLs can keep
+     * the result and reuse it while {@link RobotsRules#covers(String)} holds.
+     */
+    public RobotsRules rulesFor(String url) {
+        int pathStart = pathStart(url);
+        if (!enabled || pathStart < 0) {
+            return RobotsRules.allowAll(null);
+        }
+        String origin = url.substring(0, pathStart).toLowerCase(Locale.ROOT);
+        CacheEntry entry = cache.get(origin);
+        if (entry == null) {
+            entry = cache.computeIfAbsent(origin, key -> new CacheEntry());
+            if (cache.size() > maxOrigins) {
+                trim();
+            }
+        }
+        RobotsRules rules = entry.rules;
+        if (rules != null && System.nanoTime() - entry.expiresAt < 0) {
+            return rules;
+        }
+        // One fetch per origin; other threads wanting the same origin wait for it instead of fetching too.
+        synchronized (entry) {
+            if (entry.rules == null || System.nanoTime() - entry.expiresAt >= 0) {
+                load(origin, entry);
+            }
+            return entry.rules;
+        }
+    }
+
+    @Scheduled(initialDelayString = "${crawler.robots.sweep-interval-ms:600000}",
+            fixedDelayString = "${crawler.robots.sweep-interval-ms:600000}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        cache.values().removeIf(entry -> entry.rules != null && now - entry.expiresAt >= 0);
+    }
+
+    // Down to nine tenths of the cap, so a full cache is not sorted again for every new origin.
+    private synchronized void trim() {
+        evictExpired();
+        int excess = cache.size() - maxOrigins * 9 / 10;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, CacheEntry>> entries = new ArrayList<>(cache.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().expiresAt));
+        for (int i = 0; i < excess && i < entries.size(); i++) {
+            cache.remove(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getCachedOriginCount() {
+        return cache.size();
+    }
+
+    public long getFetchCount() {
+        return fetches.sum();
+    }
+
+    public long getDisallowedCount() {
+        return disallowed.sum();
+    }
+
+    void recordDisallowed(int count) {
+        disallowed.add(count);
+    }
+
+    private void load(String origin, CacheEntry entry) {
+        String host = hostOf(origin);
+        fetches.increment();
+        try {
+            CrawlHttpClient.FetchResult result = crawlHttpClient.fetch(origin + "/robots.txt", null);
+            byte[] body = result.body();
+            String text = new String(body, 0, Math.min(body.length, MAX_ROBOTS_BYTES), StandardCharsets.UTF_8);
+            store(entry, parse(origin, text), cacheTtlNanos, host);
+        } catch (HttpStatusException ex) {
+            if (ex.getStatusCode() >= 400 && ex.getStatusCode() < 500) {
+                store(entry, RobotsRules.allowAll(origin), cacheTtlNanos, host);
+            } else {
+                keepPrevious(origin, entry, host, "HTTP " + ex.getStatusCode());
+            }
+        } catch (IOException | RuntimeException ex) {
+            keepPrevious(origin, entry, host, ex.getMessage());
+        }
+    }
+
+    private void keepPrevious(String origin, CacheEntry entry, String host, String reason) {
+        log.warn("Could not read robots.txt for {} ({}); retrying in {} s.", origin, reason,
+                Duration.ofNanos(errorTtlNanos).toSeconds());
+        store(entry, entry.rules != null ? entry.rules : RobotsRules.allowAll(origin), errorTtlNanos, host);
+    }
+
+    private void store(CacheEntry entry, RobotsRules rules, long ttlNanos, String host) {
+        entry.rules = rules;
+        entry.expiresAt = System.nanoTime() + ttlNanos;
+        Duration delay = rules.crawlDelay();
+        if (delay != null && delay.compareTo(maxCrawlDelay) > 0) {
+            delay = maxCrawlDelay;
+        }
+        hostGuard.setCrawlDelay(host, delay);
+    }
+
+    /**
+     * Parse a robots.txt body, keeping the groups that name our product token, or the {@code *} groups if none
+     * do. As RFC 9309 asks, the token is compared case-insensitively and in full, and several matching groups
+     * are merged.
+     */
+    RobotsRules parse(String origin, String text) {
+        List<Rule> specific = new ArrayList<>();
+        List<Rule> wildcard = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        Double specificDelay = null;
+        Double wildcardDelay = null;
+        boolean groupSpecific = false;
+        boolean groupWildcard = false;
+        boolean inAgentLines = false;
+        boolean anySpecific = false;
+
+        for (String rawLine : text.split("\r\n|\r|\n")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (key) {
+                case "user-agent" -> {
+                    if (!inAgentLines) {
+                        // A user-agent line after rules starts a new group.
+                        groupSpecific = false;
+                        groupWildcard = false;
+                        inAgentLines = true;
+                    }
+                    String agent = productToken(value);
+                    if ("*".equals(agent)) {
+                        groupWildcard = true;
+                    } else if (!agent.isEmpty() && agent.equals(agentToken)) {
+                        groupSpecific = true;
+                        anySpecific = true;
+                    }
+                }
+                case "allow", "disallow" -> {
+                    inAgentLines = false;
+                    Rule rule = Rule.compile("allow".equals(key), value);
+                    if (rule != null) {
+                        if (groupSpecific) {
+                            specific.add(rule);
+                        }
+                        if (groupWildcard) {
+                            wildcard.add(rule);
+                        }
+                    }
+                }
+                case "crawl-delay" -> {
+                    inAgentLines = false;
+                    Double delay = parseDelay(value);
+                    if (delay != null && groupSpecific) {
+                        specificDelay = delay;
+                    }
+                    if (delay != null && groupWildcard) {
+                        wildcardDelay = delay;
+                    }
+                }
+                case "sitemap" -> {
+                    if (StringUtils.hasText(value)) {
+                        sitemaps.add(value);
+                    }
+                }
+                default -> inAgentLines = false;
+            }
+        }
+
+        List<Rule> rules = anySpecific ? specific : wildcard;
+        Double delaySeconds = anySpecific ? specificDelay : wildcardDelay;
+        // Longest pattern wins; on equal length Allow wins. Sorting once lets the first match decide.
+        rules.sort(Comparator.comparingInt(Rule::length).reversed().thenComparing(rule -> !rule.allow()));
+        Duration crawlDelay = delaySeconds != null ? Duration.ofMillis(Math.round(delaySeconds * 1000)) : null;
+        return new RobotsRules(origin, rules.toArray(new Rule[0]), crawlDelay, List.copyOf(sitemaps));
+    }
+
+    // "SpringCrawler/1.2 (+https://...)" names the product token "springcrawler".
+    private static String productToken(String value) {
+        String token = value.trim();
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '/' || Character.isWhitespace(c)) {
+                token = token.substring(0, i);
+                break;
+            }
+        }
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    private Double parseDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds > 0 && Double.isFinite(seconds) ? seconds : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    // Index where the path starts, i.e. the end of scheme://authority; -1 if the URL has no authority.
+    static int pathStart(String url) {
+        if (url == null) {
+            return -1;
+        }
+        int scheme = url.indexOf("://");
+        if (scheme <= 0) {
+            return -1;
+        }
+        for (int i = scheme + 3; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    private static String hostOf(String origin) {
+        int start = origin.indexOf("://") + 3;
+        int at = origin.lastIndexOf('@');
+        if (at >= start) {
+            start = at + 1;
+        }
+        int end = origin.indexOf(':', start);
+        if (origin.startsWith("[", start)) {
+            end = origin.indexOf(']', start) + 1;
+        }
+        return origin.substring(start, end > start ? end : origin.length());
+    }
+
+    /**
+     * The rules that apply to one origin.
+     */
+    public static final class RobotsRules {
+        private final String origin;
+        private final Rule[] rules;
+        private final Duration crawlDelay;
+        private final List<String> sitemaps;
+
+        private RobotsRules(String origin, Rule[] rules, Duration crawlDelay, List<String> sitemaps) {
+            this.origin = origin;
+            this.rules = rules;
+            this.crawlDelay = crawlDelay;
+            this.sitemaps = sitemaps;
+        }
+
+        static RobotsRules allowAll(String origin) {
+            return new RobotsRules(origin, new Rule[0], null, List.of());
+        }
+
+        /**
+         * Whether these rules are the ones for the URL's origin.
+         */
+        public boolean covers(String url) {
+            if (origin == null || url == null) {
+                return origin == null;
+            }
+            int pathStart = pathStart(url);
+            return pathStart == origin.length() && url.regionMatches(true, 0, origin, 0, pathStart);
+        }
+
+        /**
+         * Match the URL's path and query against the rules. Expects a URL this object {@link #covers(String)}.
+         */
+        public boolean isAllowed(String url) {
+            if (rules.length == 0) {
+                return true;
+            }
+            int from = pathStart(url);
+            if (from < 0) {
+                return true;
+            }
+            int fragment = url.indexOf('#', from);
+            int to = fragment >= 0 ? fragment : url.length();
+            if (from == to || url.charAt(from) != '/') {
+                // "https://host" and "https://host?x" have the implicit path "/".
+                String withRoot = "/" + url.substring(from, to);
+                return decide(withRoot, 0, withRoot.length());
+            }
+            return decide(url, from, to);
+        }
+
+        public Duration crawlDelay() {
+            return crawlDelay;
+        }
+
+        public List<String> sitemaps() {
+            return sitemaps;
+        }
+
+        private boolean decide(String path, int from, int to) {
+            for (Rule rule : rules) {
+                if (rule.matches(path, from, to)) {
+                    return rule.allow();
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * One allow/disallow line, split on {@code *} into literal segments. {@code $} at the end anchors the
+     * last segment to the end of the path.
+     */
+    record Rule(boolean allow, int length, String[] segments, boolean anchored) {
+
+        static Rule compile(boolean allow, String pattern) {
+            if (pattern.isEmpty()) {
+                // "Disallow:" with no path allows everything; an empty Allow says nothing.
+                return null;
+            }
+            boolean anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            return new Rule(allow, pattern.length(), body.split("\\*", -1), anchored);
+        }
+
+        boolean matches(String path, int from, int to) {
+            String first = segments[0];
+            if (to - from < first.length() || !path.startsWith(first, from)) {
+                return false;
+            }
+            int pos = from + first.length();
+            int last = segments.length - 1;
+            if (last == 0) {
+                return !anchored || pos == to;
+            }
+            for (int i = 1; i < last; i++) {
+                String segment = segments[i];
+                int found = path.indexOf(segment, pos);
+                if (found < 0 || found + segment.length() > to) {
+                    return false;
+                }
+                pos = found + segment.length();
+            }
+            String tail = segments[last];
+            if (anchored) {
+                int start = to - tail.length();
+                return start >= pos && path.startsWith(tail, start);
+            }
+            int found = path.indexOf(tail, pos);
+            return found >= 0 && found + tail.length() <= to;
+        }
+    }
+
+    private static final class CacheEntry {
+        private volatile RobotsRules rules;
+        private volatile long expiresAt;
+    }
+}
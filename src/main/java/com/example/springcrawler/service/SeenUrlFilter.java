@@ -0,0 +1,181 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.repository.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter over 64-bit hashes of every known crawl URL and declared canonical URL, kept in a primitive
+ * long array.
+ * A negative answer means the URL has never been stored, so the database lookup can be skipped; a positive
+ * answer may be a false positive and still has to be confirmed against {@code posts}.
+ * Until the startup warm-up has loaded {@code posts.crawl_url} and {@code posts.canonical_url}, every URL is
+ * reported as possibly seen.
+ * <p>
+ * The filter only saves queries; it is not what deduplicates. It is warmed once at startup and then only sees
+ * this node's writes, so a URL another node stored later reads as new here. The unique index on
+ * {@code posts.crawl_url} is the guarantee: discovery's {@code INSERT IGNORE} skips such a URL anyway, and
+ * canonical URLs, which no index covers, are always looked up in the database.
+ */
+@Component
+public class SeenUrlFilter {
+    private static final Logger log = LoggerFactory.getLogger(SeenUrlFilter.class);
+    private static final int WARMUP_PAGE_SIZE = 10_000;
+
+    private final PostRepository postRepository;
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedUrls;
+    private final AtomicBoolean ready = new AtomicBoolean(false);
+    private final AtomicBoolean warming = new AtomicBoolean(false);
+    private final LongAdder insertions = new LongAdder();
+
+    public SeenUrlFilter(PostRepository postRepository,
+                         @Value("${crawler.seen-filter.expected-urls:10000000}") long expectedUrls,
+                         @Value("${crawler.seen-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                         @Value("${crawler.seen-filter.max-bytes:33554432}") long maxBytes) {
+        this.postRepository = postRepository;
+        this.expectedUrls = Math.max(1, expectedUrls);
+        double fpp = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long optimalBits = (long) Math.ceil(-this.expectedUrls * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        long budgetBits = Math.max(64, maxBytes * 8);
+        long bits = Math.min(optimalBits, budgetBits);
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+        this.hashCount = (int) Math.max(1, Math.min(16, Math.round((double) bitCount / this.expectedUrls * Math.log(2))));
+        if (bits < optimalBits) {
+            log.warn("Seen-URL filter capped at {} bytes; expected false-positive rate at {} URLs is {} instead of {}.",
+                    getMemoryBytes(), this.expectedUrls, String.format("%.4f", getExpectedFalsePositiveRate()), fpp);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpOnStartup() {
+        if (!warming.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "seen-url-filter-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isReady() {
+        return ready.get();
+    }
+
+    /**
+     * @return false only if the URL has definitely never been added
+     */
+    public boolean mightContain(String url) {
+        if (!ready.get()) {
+            return true;
+        }
+        if (url == null) {
+            return false;
+        }
+        long hash = hash64(url);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(String url) {
+        if (url == null) {
+            return;
+        }
+        long hash = hash64(url);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(index);
+            while ((current & mask) == 0 && !words.compareAndSet(index, current, current | mask)) {
+                current = words.get(index);
+            }
+        }
+        insertions.increment();
+    }
+
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    public long getMemoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * False-positive rate predicted for the configured number of URLs with the actual bit array size.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * expectedUrls / bitCount), hashCount);
+    }
+
+    private void warmUp() {
+        long started = System.currentTimeMillis();
+        long afterId = 0;
+        long loaded = 0;
+        try {
+            while (true) {
+                List<Object[]> rows = postRepository.findCrawlUrlsAfterId(afterId, PageRequest.of(0, WARMUP_PAGE_SIZE));
+                if (rows.isEmpty()) {
+                    break;
+                }
+                for (Object[] row : rows) {
+                    afterId = (Long) row[0];
+                    put((String) row[1]);
+                    if (row[2] != null) {
+                        put((String) row[2]);
+                    }
+                }
+                loaded += rows.size();
+            }
+            ready.set(true);
+            log.info("Seen-URL filter loaded {} crawl URLs in {} ms ({} bytes, {} hash functions).",
+                    loaded, System.currentTimeMillis() - started, getMemoryBytes(), hashCount);
+        } catch (RuntimeException ex) {
+            // Stay in pass-through mode; every lookup keeps going to the database.
+            log.error("Seen-URL filter warm-up failed after {} URLs: {}", loaded, ex.getMessage());
+            warming.set(false);
+        }
+    }
+
+    // FNV-1a over the UTF-16 chars followed by the MurmurHash3 finalizer to spread the bits.
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.springcrawler.service;
+
+/**
+ * Published after a source is created or updated through {@link SourceService}.
+ * {@code selectorsChanged} is set when an update changed any extraction selector.
+ */
+public record SourceChangedEvent(Long sourceId, boolean created, boolean selectorsChanged) {
+}
@@ -2,24 +2,38 @@ package com.example.springcrawler.service;
 
 import com.example.springcrawler.model.Post;
 import com.example.springcrawler.model.Source;
-import jakarta.annotation.PostConstruct;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import org.jsoup.select.Selector;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
-import java.util.HashSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
@@ -28,148 +42,433 @@ public class SourceCrawlService {
     private final PostService postService;
     private final SourceService sourceService;
 
-    private static final String DEFAULT_TITLE_SELECTOR = "h1";
-    private static final String DEFAULT_CONTENT_SELECTOR = "article.fck_detail";
-    private static final String DEFAULT_DESCRIPTION_SELECTOR = "p.description";
-    private static final int BATCH_SIZE = 10;
+    private static final Evaluator LINK_SELECTOR = QueryParser.parse("a[href]");
     private static final long BOT_INTERVAL_MS = Duration.ofMinutes(5).toMillis();
+    private static final long MIN_PAUSE_MS = Duration.ofSeconds(1).toMillis();
+    private static final int MAX_CHILD_SITEMAPS = 5;
+
+    private final CrawlExecutorService crawlExecutor;
+    private final CrawlHttpClient crawlHttpClient;
+    private final ArticleCrawlPipeline crawlPipeline;
+    private final RobotsTxtService robotsTxtService;
+    private final FeedDiscoveryParser feedParser;
+    private final LinkFilterRegistry linkFilterRegistry;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final SourceDiscoveryScheduler discoveryScheduler;
+    private final int crawlBatchSize;
+    private final String nodeId;
+    private final Duration leaseDuration;
 
     private final AtomicBoolean sourceBotRunning = new AtomicBoolean(false);
     private final AtomicBoolean crawlBotRunning = new AtomicBoolean(false);
-
-    public SourceCrawlService(PostService postService, SourceService sourceService) {
+    private final WakeSignal sourceBotWake = new WakeSignal();
+    private final WakeSignal crawlBotWake = new WakeSignal();
+
+    public SourceCrawlService(PostService postService,
+                              SourceService sourceService,
+                              CrawlExecutorService crawlExecutor,
+                              CrawlHttpClient crawlHttpClient,
+                              ArticleCrawlPipeline crawlPipeline,
+                              RobotsTxtService robotsTxtService,
+                              FeedDiscoveryParser feedParser,
+                              LinkFilterRegistry linkFilterRegistry,
+                              UrlCanonicalizer urlCanonicalizer,
+                              SourceDiscoveryScheduler discoveryScheduler,
+                              @Value("${crawler.crawl.batch-size:50}") int crawlBatchSize,
+                              @Value("${crawler.node-id:}") String nodeId,
+                              @Value("${crawler.claim.lease-seconds:600}") long leaseSeconds) {
         this.postService = postService;
         this.sourceService = sourceService;
+        this.crawlExecutor = crawlExecutor;
+        this.crawlHttpClient = crawlHttpClient;
+        this.crawlPipeline = crawlPipeline;
+        this.robotsTxtService = robotsTxtService;
+        this.feedParser = feedParser;
+        this.linkFilterRegistry = linkFilterRegistry;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.discoveryScheduler = discoveryScheduler;
+        this.crawlBatchSize = Math.max(1, crawlBatchSize);
+        // Defaults to "pid@hostname", which is unique per running instance.
+        this.nodeId = StringUtils.hasText(nodeId) ? nodeId.trim() : ManagementFactory.getRuntimeMXBean().getName();
+        this.leaseDuration = Duration.ofSeconds(Math.max(1, leaseSeconds));
     }
 
-    @PostConstruct
+    // Started once the application is ready, i.e. after the schema upgrade runners, so no bot claims or marks
+    // a row FAILED before posts.status can hold it.
+    @EventListener(ApplicationReadyEvent.class)
     public void startBotsOnStartup() {
         runCrawlerBots();
     }
 
-    public Set<String> crawlSourceForPostLink(Source source, String categoryUrl, String siteUrl) {
-        Set<String> articleLinks = new HashSet<>();
-        try {
-            Document doc = Jsoup.connect(categoryUrl).timeout(5000).get();
+    /**
+     * Queue a full scan of a listing page on the crawl executor, so it waits for the host's rate limit and
+     * concurrency cap like a scheduled visit. {@code onStart} runs on the executor just before the fetch.
+     */
+    public CompletableFuture<LinkScan> submitLinkScan(Source source, String categoryUrl, String siteUrl, Runnable onStart) {
+        return crawlExecutor.submit(extractHost(categoryUrl), () -> {
+            onStart.run();
+            return crawlSourceForPostLink(source, categoryUrl, siteUrl, Integer.MAX_VALUE);
+        });
+    }
 
-            Elements links = doc.select("a[href]");
+    /**
+     * Scan a source's listing page and queue at most {@code linkQuota} new links. When the quota cuts the
+     * page short its validators are not stored, so the rest of the links are picked up on the next visit,
+     * and the result is marked truncated.
+     */
+    public LinkScan crawlSourceForPostLink(Source source, String categoryUrl, String siteUrl, int linkQuota) {
+        if (source.getDiscoveryMode() == Source.DiscoveryMode.FEED || source.getDiscoveryMode() == Source.DiscoveryMode.SITEMAP) {
+            return discoverFromFeed(source, linkQuota);
+        }
+        Set<String> articleLinks = new LinkedHashSet<>();
+        boolean truncated = false;
+        try {
+            CrawlHttpClient.FetchResult result = crawlHttpClient.fetchIfModified(categoryUrl, source,
+                    source.getEtag(), source.getLastModified());
+            if (result.isNotModified()) {
+                log.debug("Source {} listing not modified (304), skipping link scan.", source.getId());
+                return new LinkScan(articleLinks, false);
+            }
+            String contentHash = hashBody(result.body());
+            if (contentHash.equals(source.getContentHash())) {
+                log.debug("Source {} listing body unchanged, skipping link scan.", source.getId());
+                sourceService.updateFetchValidators(source, result.etag(), result.lastModified(), contentHash);
+                return new LinkScan(articleLinks, false);
+            }
+            Document doc = crawlHttpClient.parse(result);
+            LinkFilterRegistry.LinkFilter filter = linkFilterRegistry.forSource(source);
+            // Links are canonicalized to a lower-case host, so the site is compared the same way.
+            String site = siteUrl.toLowerCase(Locale.ROOT);
+
+            // Canonical URL to the form it is fetched in; the first spelling found on the page is kept.
+            Map<String, String> candidates = new LinkedHashMap<>();
+            Elements links = selectLinks(source, doc, filter);
+            RobotsTxtService.RobotsRules robots = null;
+            int disallowed = 0;
+            int filtered = 0;
             for (Element link : links) {
-                String url = link.absUrl("href");
-                if (url.contains(siteUrl) && url.contains(".html")) {
-                    Post existing = postService.getPostByCrawlUrl(url);
-                    if (existing != null) {
-                        continue;
-                    }
-                    Post post = new Post();
-                    post.setCrawlUrl(url);
-                    post.setSourceUrl(url);
-                    post.setStatus(Post.Status.UNCRAWL);
-                    post.setCategory(source.getCategory());
-                    post.setSource(source);
-                    postService.savePost(post);
-                    articleLinks.add(url);
+                String href = link.absUrl("href");
+                String url = urlCanonicalizer.canonicalize(href);
+                if (url == null || candidates.containsKey(url)) {
+                    continue;
+                }
+                // Without include patterns a source keeps the old rule: same-site links to .html pages.
+                if (!filter.hasIncludes() && (!url.contains(site) || !url.contains(".html")) || !filter.accepts(url)) {
+                    filtered++;
+                    continue;
+                }
+                // robots.txt is read from the origin the link will be fetched from. Links on a listing page
+                // nearly all share one origin, so its rules are looked up once.
+                String fetchUrl = urlCanonicalizer.fetchForm(href);
+                if (robots == null || !robots.covers(fetchUrl)) {
+                    robots = robotsTxtService.rulesFor(fetchUrl);
+                }
+                if (robots.isAllowed(fetchUrl)) {
+                    candidates.put(url, fetchUrl);
+                } else {
+                    disallowed++;
                 }
             }
+            robotsTxtService.recordDisallowed(disallowed);
 
+            PostService.CrawlUrlLookup lookup = postService.findNewCrawlUrls(candidates.keySet());
+            List<PostService.DiscoveredLink> toQueue = new ArrayList<>();
+            for (String url : lookup.newUrls()) {
+                if (articleLinks.size() >= linkQuota) {
+                    break;
+                }
+                articleLinks.add(url);
+                toQueue.add(PostService.DiscoveredLink.of(url, candidates.get(url)));
+            }
+            int inserted = postService.enqueueDiscoveredItems(source, toQueue);
+            truncated = articleLinks.size() < lookup.newUrls().size();
+            log.info("Source {}: {} anchors ({} rejected by link patterns), {} candidate links ({} disallowed by robots.txt, {} cleared by seen-URL filter), {} new, {} inserted{}, {} dedup queries.",
+                    source.getId(), links.size(), filtered, lookup.checkedCount(), disallowed, lookup.filterSkippedCount(),
+                    lookup.newUrls().size(), inserted, truncated ? " (quota " + linkQuota + ")" : "", lookup.queryCount());
+            // Only remembered once the whole page has been queued, so a failed or truncated scan is redone next visit.
+            if (!truncated) {
+                sourceService.updateFetchValidators(source, result.etag(), result.lastModified(), contentHash);
+            }
         } catch (IOException e) {
             log.error("Error crawling category: {}", e.getMessage());
         }
 
-        return articleLinks;
+        return new LinkScan(articleLinks, truncated);
     }
 
-    public void crawlUnCrawlPost() {
-        int repaired = postService.promoteUncrawlPostsWithContent();
-        if (repaired > 0) {
-            log.info("Promoted {} stale UNCRAWL posts to CRAWLED based on existing content.", repaired);
-        }
-        List<Post> uncrawlPost = postService.getUnCrawlPosts(BATCH_SIZE);
-        for (Post post : uncrawlPost) {
-            String url = post.getCrawlUrl();
-            if (!StringUtils.hasText(post.getSourceUrl()) && StringUtils.hasText(url)) {
-                post.setSourceUrl(url);
+    /**
+     * Discovery from an RSS/Atom feed or a (news) sitemap instead of the listing page. Items dated at or before
+     * the source's watermark were handled on an earlier visit and are skipped before any lookup; the rest go
+     * through the usual robots.txt and dedup checks and are queued with the title, description and image the
+     * feed gave. For a sitemap index, the child sitemaps changed since the watermark are read, newest first.
+     */
+    private LinkScan discoverFromFeed(Source source, int linkQuota) {
+        Set<String> articleLinks = new LinkedHashSet<>();
+        boolean truncated = false;
+        String feedUrl = StringUtils.hasText(source.getDiscoveryUrl()) ? source.getDiscoveryUrl().trim() : source.getUrl().trim();
+        try {
+            CrawlHttpClient.FetchResult result = crawlHttpClient.fetchIfModified(feedUrl, source,
+                    source.getEtag(), source.getLastModified());
+            if (result.isNotModified()) {
+                log.debug("Source {} feed not modified (304), skipping.", source.getId());
+                return new LinkScan(articleLinks, false);
             }
-            try {
-                Document doc = Jsoup.connect(url).timeout(5000).get();
-
-                Source source = post.getSource();
-                String titleSelector = resolveSelector(source != null ? source.getTitleSelector() : null, DEFAULT_TITLE_SELECTOR);
-                String contentSelector = resolveSelector(source != null ? source.getContentSelector() : null, DEFAULT_CONTENT_SELECTOR);
-                String descriptionSelector = resolveSelector(source != null ? source.getDescriptionSelector() : null, DEFAULT_DESCRIPTION_SELECTOR);
-                String imageSelector = source != null ? source.getImageSelector() : null;
-                String removalSelector = source != null ? source.getRemovalSelector() : null;
-
-                Element titleElement = selectFirst(doc, titleSelector);
-                Element contentElement = selectFirst(doc, contentSelector);
-                Element descriptionElement = selectFirst(doc, descriptionSelector);
+            String contentHash = hashBody(result.body());
+            if (contentHash.equals(source.getContentHash())) {
+                log.debug("Source {} feed body unchanged, skipping.", source.getId());
+                sourceService.updateFetchValidators(source, result.etag(), result.lastModified(), contentHash);
+                return new LinkScan(articleLinks, false);
+            }
+            LocalDateTime watermark = source.getDiscoveryWatermark();
+            FeedDiscoveryParser.ParsedFeed feed = feedParser.parse(result.body(), result.uri().toString());
+            List<PostService.DiscoveredLink> items = feed.sitemapIndex()
+                    ? readChildSitemaps(source, feed.items(), watermark)
+                    : feed.items();
+
+            LinkFilterRegistry.LinkFilter filter = linkFilterRegistry.forSource(source);
+            Map<String, PostService.DiscoveredLink> fresh = new LinkedHashMap<>();
+            LocalDateTime newest = watermark;
+            int stale = 0;
+            int filtered = 0;
+            int disallowed = 0;
+            RobotsTxtService.RobotsRules robots = null;
+            for (PostService.DiscoveredLink item : items) {
+                LocalDateTime published = item.publishedAt();
+                if (published != null && watermark != null && !published.isAfter(watermark)) {
+                    stale++;
+                    continue;
+                }
+                String url = urlCanonicalizer.canonicalize(item.url());
+                if (url == null || fresh.containsKey(url)) {
+                    continue;
+                }
+                if (!filter.accepts(url)) {
+                    filtered++;
+                    continue;
+                }
+                String fetchUrl = urlCanonicalizer.fetchForm(item.url());
+                if (robots == null || !robots.covers(fetchUrl)) {
+                    robots = robotsTxtService.rulesFor(fetchUrl);
+                }
+                if (!robots.isAllowed(fetchUrl)) {
+                    disallowed++;
+                    continue;
+                }
+                fresh.put(url, item.withUrls(url, fetchUrl));
+                if (published != null && (newest == null || published.isAfter(newest))) {
+                    newest = published;
+                }
+            }
+            robotsTxtService.recordDisallowed(disallowed);
 
-                if (contentElement != null && StringUtils.hasText(removalSelector)) {
-                    contentElement.select(removalSelector).remove();
+            PostService.CrawlUrlLookup lookup = postService.findNewCrawlUrls(fresh.keySet());
+            List<PostService.DiscoveredLink> toQueue = new ArrayList<>();
+            for (String url : lookup.newUrls()) {
+                if (toQueue.size() >= linkQuota) {
+                    break;
+                }
+                toQueue.add(fresh.get(url));
+                articleLinks.add(url);
+            }
+            int inserted = postService.enqueueDiscoveredItems(source, toQueue);
+            truncated = toQueue.size() < lookup.newUrls().size();
+            log.info("Source {} {}: {} items ({} older than watermark, {} rejected by link patterns, {} disallowed by robots.txt), {} new, {} inserted{}.",
+                    source.getId(), feed.sitemapIndex() ? "sitemap index" : "feed", items.size(), stale, filtered, disallowed,
+                    lookup.newUrls().size(), inserted, truncated ? " (quota " + linkQuota + ")" : "");
+            // As with listing pages, a truncated read is redone from the same point on the next visit.
+            if (!truncated) {
+                sourceService.updateFetchValidators(source, result.etag(), result.lastModified(), contentHash);
+                if (newest != null && !newest.equals(watermark)) {
+                    sourceService.updateDiscoveryWatermark(source, newest);
                 }
+            }
+        } catch (IOException e) {
+            log.error("Error reading feed {} of source {}: {}", feedUrl, source.getId(), e.getMessage());
+        }
+        return new LinkScan(articleLinks, truncated);
+    }
 
-                post.setTitle(titleElement != null ? titleElement.text() : null);
-                post.setContent(contentElement != null ? contentElement.text() : null);
-                post.setShortDescription(descriptionElement != null ? descriptionElement.text() : null);
+    /**
+     * Anchors inside the source's listing container, or on the whole page when it has none. A container
+     * that matches nothing usually means the site's layout changed, so the whole page is scanned instead
+     * and the include/exclude patterns have to keep out what the container used to.
+     */
+    private Elements selectLinks(Source source, Document doc, LinkFilterRegistry.LinkFilter filter) {
+        if (filter.container() == null) {
+            return doc.select(LINK_SELECTOR);
+        }
+        Elements containers = doc.select(filter.container());
+        if (containers.isEmpty()) {
+            log.warn("Source {}: listing container '{}' matched nothing, scanning the whole page.",
+                    source.getId(), filter.containerSource());
+            return doc.select(LINK_SELECTOR);
+        }
+        // Nested containers can yield an anchor twice; the scan drops repeated URLs anyway.
+        Elements links = new Elements();
+        for (Element container : containers) {
+            links.addAll(container.select(LINK_SELECTOR));
+        }
+        return links;
+    }
 
-                String imageUrl = extractImageUrl(doc, imageSelector);
-                if (StringUtils.hasText(imageUrl)) {
-                    post.setImgUrl(imageUrl);
+    private List<PostService.DiscoveredLink> readChildSitemaps(Source source,
+                                                               List<PostService.DiscoveredLink> children,
+                                                               LocalDateTime watermark) {
+        List<PostService.DiscoveredLink> changed = new ArrayList<>();
+        for (PostService.DiscoveredLink child : children) {
+            if (child.publishedAt() == null || watermark == null || child.publishedAt().isAfter(watermark)) {
+                changed.add(child);
+            }
+        }
+        // Undated children sort last, so dated recent ones are read first.
+        changed.sort(Comparator.comparing(PostService.DiscoveredLink::publishedAt,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        List<PostService.DiscoveredLink> items = new ArrayList<>();
+        for (PostService.DiscoveredLink child : changed.subList(0, Math.min(MAX_CHILD_SITEMAPS, changed.size()))) {
+            try {
+                CrawlHttpClient.FetchResult result = crawlHttpClient.fetch(child.url(), source);
+                FeedDiscoveryParser.ParsedFeed feed = feedParser.parse(result.body(), result.uri().toString());
+                if (!feed.sitemapIndex()) {
+                    items.addAll(feed.items());
                 }
-
-                post.setStatus(Post.Status.CRAWLED);
-                postService.savePost(post);
             } catch (IOException e) {
-                log.error("Error crawling category: {}", e.getMessage());
+                log.warn("Skipping sitemap {} of source {}: {}", child.url(), source.getId(), e.getMessage());
             }
+        }
+        return items;
+    }
 
+    @Scheduled(initialDelayString = "${crawler.repair.initial-delay-ms:60000}",
+            fixedDelayString = "${crawler.repair.interval-ms:3600000}")
+    public void repairStaleUncrawlPosts() {
+        long started = System.currentTimeMillis();
+        int repaired = postService.promoteUncrawlPostsWithContent();
+        if (repaired > 0) {
+            log.info("Promoted {} stale UNCRAWL posts to CRAWLED based on existing content in {} ms.",
+                    repaired, System.currentTimeMillis() - started);
         }
     }
 
+    /**
+     * Claim one batch of UNCRAWL posts and wait for it to go through the crawl pipeline, reporting each post's
+     * outcome to the listener as it is written. The batch is smaller than usual when the pipeline is busy.
+     *
+     * @return the number of posts claimed; 0 means nothing is due right now
+     */
+    public int crawlUnCrawlPost(ArticleCrawlPipeline.PostListener listener) {
+        List<Post> uncrawlPost;
+        try {
+            uncrawlPost = claimForPipeline();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        if (uncrawlPost.isEmpty()) {
+            return 0;
+        }
+        crawlPipeline.process(uncrawlPost, listener).join();
+        log.info("Crawled batch of {} posts ({} pages/sec over the last minute).",
+                uncrawlPost.size(), String.format("%.2f", crawlExecutor.getPagesPerSecond()));
+        return uncrawlPost.size();
+    }
+
+    // Claims only as many posts as the pipeline has room for, so leases do not run down while posts wait in it.
+    private List<Post> claimForPipeline() throws InterruptedException {
+        int reserved = crawlPipeline.reserveSlots(crawlBatchSize);
+        List<Post> claimed = List.of();
+        try {
+            claimed = postService.claimUncrawlPosts(nodeId, reserved, leaseDuration);
+        } finally {
+            crawlPipeline.releaseSlots(reserved - claimed.size());
+        }
+        return claimed;
+    }
+
     public void runCrawlerBots() {
         startBotThread(sourceBotRunning, this::queueArticlesFromSourcesContinuously, "source-fetch-bot");
         startBotThread(crawlBotRunning, this::crawlUnCrawledPostsContinuously, "uncrawled-post-bot");
     }
 
+    @EventListener
+    public void onSourceChanged(SourceChangedEvent event) {
+        sourceBotWake.signal();
+    }
+
+    @EventListener
+    public void onPostsEnqueued(PostsEnqueuedEvent event) {
+        crawlBotWake.signal();
+    }
+
     private void queueArticlesFromSourcesContinuously() {
         while (sourceBotRunning.get()) {
             queueArticlesFromSourcesBatch();
-            pauseBot(sourceBotRunning);
+            Duration untilDue = discoveryScheduler.timeUntilNextDue(sourceService.getActiveSources());
+            pauseBot(sourceBotRunning, sourceBotWake, Math.max(MIN_PAUSE_MS, Math.min(BOT_INTERVAL_MS, untilDue.toMillis())));
         }
     }
 
     private void crawlUnCrawledPostsContinuously() {
         while (crawlBotRunning.get()) {
-            crawlUnCrawlPost();
-            pauseBot(crawlBotRunning);
+            // Claiming waits for room in the pipeline, so posts are fed in as others leave it rather than in
+            // batches that each wait for their slowest post. Only an empty claim falls back to waiting.
+            List<Post> claimed;
+            try {
+                claimed = claimForPipeline();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                crawlBotRunning.set(false);
+                return;
+            }
+            if (!claimed.isEmpty()) {
+                crawlPipeline.process(claimed, null);
+                continue;
+            }
+            pauseBot(crawlBotRunning, crawlBotWake, BOT_INTERVAL_MS);
         }
     }
 
     private void queueArticlesFromSourcesBatch() {
+        List<SourceDiscoveryScheduler.SourceVisit> visits = discoveryScheduler.planCycle(sourceService.getActiveSources());
+        if (visits.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<Integer>> pending = new ArrayList<>(visits.size());
+        for (SourceDiscoveryScheduler.SourceVisit visit : visits) {
+            Source source = visit.source();
+            pending.add(crawlExecutor.submit(extractHost(source.getUrl()), () -> visitSource(source, visit.linkQuota())));
+        }
         int queuedCount = 0;
-        List<Source> sources = sourceService.getActiveSources();
-        for (Source source : sources) {
-            if (source == null || !StringUtils.hasText(source.getUrl())) {
-                continue;
-            }
-            try {
-                String domain = extractDomain(source.getUrl());
-                if (domain == null) {
-                    continue;
-                }
-                Set<String> queuedLinks = crawlSourceForPostLink(source, source.getUrl().trim(), domain);
-                queuedCount += queuedLinks.size();
-                if (queuedCount >= BATCH_SIZE) {
-                    break;
-                }
-            } catch (Exception ex) {
-                log.error("Error queueing source {}: {}", source.getId(), ex.getMessage());
+        for (CompletableFuture<Integer> visit : pending) {
+            queuedCount += visit.join();
+        }
+        log.info("Discovery cycle visited {} sources and queued {} links.", visits.size(), queuedCount);
+    }
+
+    private int visitSource(Source source, int linkQuota) {
+        int queued = 0;
+        boolean truncated = false;
+        try {
+            String domain = extractDomain(source.getUrl());
+            if (domain != null) {
+                LinkScan scan = crawlSourceForPostLink(source, source.getUrl().trim(), domain, linkQuota);
+                queued = scan.links().size();
+                truncated = scan.truncated();
             }
+        } catch (Exception ex) {
+            log.error("Error queueing source {}: {}", source.getId(), ex.getMessage());
+        } finally {
+            // Failed visits count as zero yield, so a broken source backs off instead of holding its slot.
+            discoveryScheduler.recordVisit(source, queued, truncated, LocalDateTime.now());
         }
+        return queued;
     }
 
-    private void pauseBot(AtomicBoolean flag) {
+    /**
+     * Idle until woken by a signal or until {@code millis} have passed, whichever comes first.
+     */
+    private void pauseBot(AtomicBoolean flag, WakeSignal wakeSignal, long millis) {
         try {
-            Thread.sleep(BOT_INTERVAL_MS);
+            wakeSignal.await(millis);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             flag.set(false);
@@ -190,43 +489,6 @@ public class SourceCrawlService {
         }
     }
 
-    private String resolveSelector(String candidate, String fallback) {
-        return StringUtils.hasText(candidate) ? candidate.trim() : fallback;
-    }
-
-    private Element selectFirst(Document document, String selector) {
-        if (document == null) {
-            return null;
-        }
-        if (!StringUtils.hasText(selector)) {
-            return null;
-        }
-        try {
-            return document.select(selector).first();
-        } catch (Selector.SelectorParseException ex) {
-            log.warn("Invalid selector '{}': {}", selector, ex.getMessage());
-            return null;
-        }
-    }
-
-    private String extractImageUrl(Document document, String imageSelector) {
-        Elements imgs = document.select(imageSelector);
-
-        if (!imgs.isEmpty()) {
-            Element img = imgs.first(); // Get the first img element
-
-            if (img.hasAttr("data-src")) {
-                return img.attr("data-src");
-            } else if (img.hasAttr("data-original")) {
-                return img.attr("data-original");
-            } else if (img.hasAttr("src")) {
-                return img.attr("src");
-            }
-        }
-
-        return null;
-    }
-
     private String resolveImageAttribute(Element element, String attribute) {
         if (!StringUtils.hasText(attribute)) {
             return null;
@@ -247,6 +509,26 @@ public class SourceCrawlService {
         return value;
     }
 
+    private String hashBody(byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private String extractHost(String url) {
+        if (!StringUtils.hasText(url)) {
+            return null;
+        }
+        try {
+            return new URI(url.trim()).getHost();
+        } catch (URISyntaxException ex) {
+            return null;
+        }
+    }
+
     private String extractDomain(String url) throws URISyntaxException {
         URI uri = new URI(url);
         String host = uri.getHost();
@@ -255,4 +537,10 @@ public class SourceCrawlService {
         }
         return host.startsWith("www.") ? host.substring(4) : host;
     }
+
+    /**
+     * Links queued by one scan; {@code truncated} means the quota stopped it while new links were left.
+     */
+    public record LinkScan(Set<String> links, boolean truncated) {
+    }
 }
@@ -0,0 +1,141 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Source;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which sources a discovery cycle visits and how many new links each may queue.
+ * Every source carries its own revisit interval, adapted after each visit from a moving average of how many
+ * new links it produced: productive sources are revisited sooner, quiet ones back off towards the maximum
+ * interval. Sources are taken from a queue ordered by due time, and the cycle's link budget is split between
+ * the visited sources in proportion to their crawl weight.
+ */
+@Component
+public class SourceDiscoveryScheduler {
+    private static final double YIELD_SMOOTHING = 0.3;
+    private static final Comparator<Source> EARLIEST_DUE = Comparator
+            .comparing(Source::getNextVisitAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(Source::getLastVisitedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(Source::getId, Comparator.nullsLast(Comparator.<Long>naturalOrder()));
+
+    private final SourceService sourceService;
+    private final int sourcesPerCycle;
+    private final int linkBudget;
+    private final int minIntervalSeconds;
+    private final int maxIntervalSeconds;
+    private final int initialIntervalSeconds;
+    private final double targetLinksPerVisit;
+
+    public SourceDiscoveryScheduler(SourceService sourceService,
+                                    @Value("${crawler.discovery.sources-per-cycle:50}") int sourcesPerCycle,
+                                    @Value("${crawler.discovery.link-budget:200}") int linkBudget,
+                                    @Value("${crawler.discovery.min-interval-seconds:60}") int minIntervalSeconds,
+                                    @Value("${crawler.discovery.max-interval-seconds:86400}") int maxIntervalSeconds,
+                                    @Value("${crawler.discovery.initial-interval-seconds:300}") int initialIntervalSeconds,
+                                    @Value("${crawler.discovery.target-links-per-visit:5}") double targetLinksPerVisit) {
+        this.sourceService = sourceService;
+        this.sourcesPerCycle = Math.max(1, sourcesPerCycle);
+        this.linkBudget = Math.max(1, linkBudget);
+        this.minIntervalSeconds = Math.max(1, minIntervalSeconds);
+        this.maxIntervalSeconds = Math.max(this.minIntervalSeconds, maxIntervalSeconds);
+        this.initialIntervalSeconds = clamp(initialIntervalSeconds);
+        this.targetLinksPerVisit = targetLinksPerVisit > 0 ? targetLinksPerVisit : 1;
+    }
+
+    /**
+     * Take the sources that are due now, earliest first, up to the per-cycle limit.
+     */
+    public List<SourceVisit> planCycle(List<Source> activeSources) {
+        PriorityQueue<Source> queue = new PriorityQueue<>(Math.max(1, activeSources.size()), EARLIEST_DUE);
+        for (Source source : activeSources) {
+            if (source != null && StringUtils.hasText(source.getUrl())) {
+                queue.add(source);
+            }
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Source> selected = new ArrayList<>();
+        while (selected.size() < sourcesPerCycle && !queue.isEmpty() && isDue(queue.peek(), now)) {
+            selected.add(queue.poll());
+        }
+
+        long totalWeight = 0;
+        for (Source source : selected) {
+            totalWeight += weightOf(source);
+        }
+        List<SourceVisit> visits = new ArrayList<>(selected.size());
+        for (Source source : selected) {
+            int quota = (int) Math.max(1, linkBudget * weightOf(source) / totalWeight);
+            visits.add(new SourceVisit(source, quota));
+        }
+        return visits;
+    }
+
+    /**
+     * Time until the earliest source becomes due, so the discovery bot does not sleep past it.
+     */
+    public Duration timeUntilNextDue(List<Source> activeSources) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime earliest = null;
+        for (Source source : activeSources) {
+            if (source == null || !StringUtils.hasText(source.getUrl())) {
+                continue;
+            }
+            if (source.getNextVisitAt() == null) {
+                return Duration.ZERO;
+            }
+            if (earliest == null || source.getNextVisitAt().isBefore(earliest)) {
+                earliest = source.getNextVisitAt();
+            }
+        }
+        if (earliest == null) {
+            return Duration.ofSeconds(maxIntervalSeconds);
+        }
+        return earliest.isAfter(now) ? Duration.between(now, earliest) : Duration.ZERO;
+    }
+
+    /**
+     * Fold the visit's yield into the source's moving average and schedule its next visit. The interval moves
+     * towards the one that would yield {@code targetLinksPerVisit}, by at most a factor of two per visit.
+     * <p>
+     * A visit cut short by its quota ({@code truncated}) says only that the source had at least that many new
+     * links, and a quota can be below the target when many sources share the budget. Such a visit counts as at
+     * least {@code targetLinksPerVisit} and never lengthens the interval.
+     */
+    public void recordVisit(Source source, int newLinks, boolean truncated, LocalDateTime visitedAt) {
+        double sample = truncated ? Math.max(newLinks, targetLinksPerVisit) : newLinks;
+        double previousYield = source.getYieldEwma() != null ? source.getYieldEwma() : targetLinksPerVisit;
+        double yield = YIELD_SMOOTHING * sample + (1 - YIELD_SMOOTHING) * previousYield;
+        int interval = source.getRevisitIntervalSeconds() != null ? source.getRevisitIntervalSeconds() : initialIntervalSeconds;
+
+        double factor = yield > 0 ? targetLinksPerVisit / yield : 2.0;
+        factor = Math.max(0.5, Math.min(truncated ? 1.0 : 2.0, factor));
+        int nextInterval = clamp((int) Math.round(interval * factor));
+
+        sourceService.updateVisitSchedule(source, visitedAt, visitedAt.plusSeconds(nextInterval), nextInterval, yield);
+    }
+
+    public static int weightOf(Source source) {
+        Integer weight = source.getCrawlWeight();
+        return weight != null && weight > 0 ? weight : 1;
+    }
+
+    private boolean isDue(Source source, LocalDateTime now) {
+        return source.getNextVisitAt() == null || !source.getNextVisitAt().isAfter(now);
+    }
+
+    private int clamp(int seconds) {
+        return Math.max(minIntervalSeconds, Math.min(maxIntervalSeconds, seconds));
+    }
+
+    public record SourceVisit(Source source, int linkQuota) {
+    }
+}
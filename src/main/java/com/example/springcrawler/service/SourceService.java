@@ -5,9 +5,12 @@ import com.example.springcrawler.model.Source;
 import com.example.springcrawler.repository.SourceRepository;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 
@@ -16,10 +19,20 @@ public class SourceService {
 
     private final SourceRepository sourceRepository;
     private final CategoryService categoryService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SelectorRegistry selectorRegistry;
+    private final LinkFilterRegistry linkFilterRegistry;
 
-    public SourceService(SourceRepository sourceRepository, CategoryService categoryService) {
+    public SourceService(SourceRepository sourceRepository,
+                         CategoryService categoryService,
+                         ApplicationEventPublisher eventPublisher,
+                         SelectorRegistry selectorRegistry,
+                         LinkFilterRegistry linkFilterRegistry) {
         this.sourceRepository = sourceRepository;
         this.categoryService = categoryService;
+        this.eventPublisher = eventPublisher;
+        this.selectorRegistry = selectorRegistry;
+        this.linkFilterRegistry = linkFilterRegistry;
     }
     public List<Source> getActiveSources() {
         return sourceRepository.findAllByDeletedFalseOrderByIdDesc();
@@ -36,11 +49,19 @@ public class SourceService {
                               String contentSelector,
                               String descriptionSelector,
                               String imageSelector,
-                              String removalSelector) {
+                              String removalSelector,
+                              Integer crawlWeight,
+                              Source.DiscoveryMode discoveryMode,
+                              String discoveryUrl,
+                              String linkIncludePatterns,
+                              String linkExcludePatterns,
+                              String linkContainerSelector) {
         Category category = categoryService.getCategoryById(categoryId);
         if (category == null) {
             throw new IllegalArgumentException("Category does not exist.");
         }
+        selectorRegistry.validate(titleSelector, contentSelector, descriptionSelector, imageSelector, removalSelector);
+        linkFilterRegistry.validate(linkContainerSelector);
 
         Source source = new Source();
         source.setCategory(category);
@@ -51,7 +72,16 @@ public class SourceService {
         source.setDescriptionSelector(normalizeSelector(descriptionSelector));
         source.setImageSelector(normalizeSelector(imageSelector));
         source.setRemovalSelector(normalizeSelector(removalSelector));
-        return sourceRepository.save(source);
+        source.setSelectorVersion(0);
+        source.setCrawlWeight(normalizeWeight(crawlWeight));
+        source.setDiscoveryMode(normalizeMode(discoveryMode));
+        source.setDiscoveryUrl(trimToNull(discoveryUrl));
+        source.setLinkIncludePatterns(normalizePatterns(linkIncludePatterns));
+        source.setLinkExcludePatterns(normalizePatterns(linkExcludePatterns));
+        source.setLinkContainerSelector(normalizeSelector(linkContainerSelector));
+        Source saved = sourceRepository.save(source);
+        eventPublisher.publishEvent(new SourceChangedEvent(saved.getId(), true, false));
+        return saved;
     }
 
     public Source updateSource(Long id,
@@ -61,7 +91,13 @@ public class SourceService {
                               String contentSelector,
                               String descriptionSelector,
                               String imageSelector,
-                              String removalSelector) {
+                              String removalSelector,
+                              Integer crawlWeight,
+                              Source.DiscoveryMode discoveryMode,
+                              String discoveryUrl,
+                              String linkIncludePatterns,
+                              String linkExcludePatterns,
+                              String linkContainerSelector) {
         Source existing = getSourceById(id);
         if (existing == null || existing.isDeleted()) {
             return null;
@@ -71,15 +107,85 @@ public class SourceService {
         if (category == null) {
             return null;
         }
+        selectorRegistry.validate(titleSelector, contentSelector, descriptionSelector, imageSelector, removalSelector);
+        linkFilterRegistry.validate(linkContainerSelector);
 
-        existing.setCategory(category);
-        existing.setUrl(url);
-        existing.setTitleSelector(normalizeSelector(titleSelector));
-        existing.setContentSelector(normalizeSelector(contentSelector));
-        existing.setDescriptionSelector(normalizeSelector(descriptionSelector));
-        existing.setImageSelector(normalizeSelector(imageSelector));
-        existing.setRemovalSelector(normalizeSelector(removalSelector));
-        return sourceRepository.save(existing);
+        // Only the edited columns are written: the bots and the re-extraction job update the schedule,
+        // validators and cursor of this row concurrently, and saving the loaded entity would undo their writes.
+        if (url == null || !url.equals(existing.getUrl())
+                || normalizeMode(existing.getDiscoveryMode()) != normalizeMode(discoveryMode)
+                || !Objects.equals(trimToNull(existing.getDiscoveryUrl()), trimToNull(discoveryUrl))) {
+            // Validators and the watermark belong to the old listing, feed or sitemap.
+            sourceRepository.resetDiscoveryState(id);
+        } else if (linkFilterChanged(existing, linkIncludePatterns, linkExcludePatterns, linkContainerSelector)) {
+            // An unchanged listing body would otherwise be skipped before the new filter ever sees it.
+            sourceRepository.updateFetchValidators(id, null, null, null);
+        }
+        boolean selectorsChanged = selectorsChanged(existing, titleSelector, contentSelector, descriptionSelector,
+                imageSelector, removalSelector);
+        sourceRepository.updateSettings(id, category, url,
+                normalizeSelector(titleSelector),
+                normalizeSelector(contentSelector),
+                normalizeSelector(descriptionSelector),
+                normalizeSelector(imageSelector),
+                normalizeSelector(removalSelector),
+                normalizeWeight(crawlWeight),
+                normalizeMode(discoveryMode),
+                trimToNull(discoveryUrl),
+                normalizePatterns(linkIncludePatterns),
+                normalizePatterns(linkExcludePatterns),
+                normalizeSelector(linkContainerSelector));
+        if (selectorsChanged) {
+            // Existing posts were extracted with the old selectors; re-extract them from the start.
+            sourceRepository.bumpSelectorVersion(id);
+        }
+        Source saved = getSourceById(id);
+        eventPublisher.publishEvent(new SourceChangedEvent(id, false, selectorsChanged));
+        return saved;
+    }
+
+    /**
+     * Store the listing page validators without re-saving the whole entity, so a bot holding an older copy
+     * of the source cannot overwrite selectors edited in the admin meanwhile.
+     */
+    public void updateFetchValidators(Source source, String etag, String lastModified, String contentHash) {
+        if (source == null || source.getId() == null) {
+            return;
+        }
+        sourceRepository.updateFetchValidators(source.getId(), etag, lastModified, contentHash);
+        source.setEtag(etag);
+        source.setLastModified(lastModified);
+        source.setContentHash(contentHash);
+    }
+
+    public void updateVisitSchedule(Source source,
+                                    LocalDateTime visitedAt,
+                                    LocalDateTime nextVisitAt,
+                                    int intervalSeconds,
+                                    double yieldEwma) {
+        if (source == null || source.getId() == null) {
+            return;
+        }
+        sourceRepository.updateVisitSchedule(source.getId(), visitedAt, nextVisitAt, intervalSeconds, yieldEwma);
+        source.setLastVisitedAt(visitedAt);
+        source.setNextVisitAt(nextVisitAt);
+        source.setRevisitIntervalSeconds(intervalSeconds);
+        source.setYieldEwma(yieldEwma);
+    }
+
+    public void updateDiscoveryWatermark(Source source, LocalDateTime watermark) {
+        if (source == null || source.getId() == null) {
+            return;
+        }
+        sourceRepository.updateDiscoveryWatermark(source.getId(), watermark);
+        source.setDiscoveryWatermark(watermark);
+    }
+
+    public void updateReextractCursor(Long sourceId, Long cursor) {
+        if (sourceId == null) {
+            return;
+        }
+        sourceRepository.updateReextractCursor(sourceId, cursor);
     }
 
     public void softDeleteSource(Long id) {
@@ -90,11 +196,52 @@ public class SourceService {
         }
     }
 
+    private boolean selectorsChanged(Source existing,
+                                     String titleSelector,
+                                     String contentSelector,
+                                     String descriptionSelector,
+                                     String imageSelector,
+                                     String removalSelector) {
+        // Both sides are normalized, so untrimmed legacy values do not count as an edit.
+        return !Objects.equals(normalizeSelector(existing.getTitleSelector()), normalizeSelector(titleSelector))
+                || !Objects.equals(normalizeSelector(existing.getContentSelector()), normalizeSelector(contentSelector))
+                || !Objects.equals(normalizeSelector(existing.getDescriptionSelector()), normalizeSelector(descriptionSelector))
+                || !Objects.equals(normalizeSelector(existing.getImageSelector()), normalizeSelector(imageSelector))
+                || !Objects.equals(normalizeSelector(existing.getRemovalSelector()), normalizeSelector(removalSelector));
+    }
+
+    private boolean linkFilterChanged(Source existing,
+                                      String linkIncludePatterns,
+                                      String linkExcludePatterns,
+                                      String linkContainerSelector) {
+        return !Objects.equals(normalizePatterns(existing.getLinkIncludePatterns()), normalizePatterns(linkIncludePatterns))
+                || !Objects.equals(normalizePatterns(existing.getLinkExcludePatterns()), normalizePatterns(linkExcludePatterns))
+                || !Objects.equals(normalizeSelector(existing.getLinkContainerSelector()), normalizeSelector(linkContainerSelector));
+    }
+
+    private Source.DiscoveryMode normalizeMode(Source.DiscoveryMode mode) {
+        return mode == Source.DiscoveryMode.HTML ? null : mode;
+    }
+
+    private Integer normalizeWeight(Integer weight) {
+        return weight != null && weight > 0 ? weight : null;
+    }
+
     private String normalizeSelector(String selector) {
-        if (selector == null) {
+        return trimToNull(selector);
+    }
+
+    // One pattern per line, so the stored value reads the same as the form.
+    private String normalizePatterns(String patterns) {
+        List<String> parts = LinkPatternMatcher.split(patterns);
+        return parts.isEmpty() ? null : String.join("\n", parts);
+    }
+
+    private String trimToNull(String value) {
+        if (value == null) {
             return null;
         }
-        String trimmed = selector.trim();
+        String trimmed = value.trim();
         return trimmed.isEmpty() ? null : trimmed;
     }
 }
@@ -0,0 +1,57 @@
+package com.example.springcrawler.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free events-per-second meter backed by one counter per wall-clock second.
+ * The rate is averaged over the last {@code windowSeconds} complete seconds.
+ */
+public class ThroughputMeter {
+    private final int windowSeconds;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray seconds;
+    private final LongAdder total = new LongAdder();
+
+    public ThroughputMeter(int windowSeconds) {
+        this.windowSeconds = Math.max(1, windowSeconds);
+        // One extra slot so the second currently being filled never overwrites the window.
+        this.counts = new AtomicLongArray(this.windowSeconds + 1);
+        this.seconds = new AtomicLongArray(this.windowSeconds + 1);
+    }
+
+    public void mark() {
+        mark(1);
+    }
+
+    public void mark(long events) {
+        long now = currentSecond();
+        int slot = (int) (now % counts.length());
+        long slotSecond = seconds.get(slot);
+        if (slotSecond != now && seconds.compareAndSet(slot, slotSecond, now)) {
+            counts.set(slot, 0);
+        }
+        counts.addAndGet(slot, events);
+        total.add(events);
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public double getRatePerSecond() {
+        long now = currentSecond();
+        long sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long second = seconds.get(i);
+            if (second < now && second >= now - windowSeconds) {
+                sum += counts.get(i);
+            }
+        }
+        return (double) sum / windowSeconds;
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000L;
+    }
+}
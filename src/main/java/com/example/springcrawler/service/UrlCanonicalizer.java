@@ -0,0 +1,223 @@
+package com.example.springcrawler.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Brings the different spellings of one article URL to a single form before it is deduplicated: lower-case
+ * scheme and host, {@code https} instead of {@code http} (unless a non-default port is given), no default
+ * port, no fragment, no trailing slash on a non-root path, no tracking parameters ({@code utm_*},
+ * {@code fbclid}, {@code gclid}, ...) and no AMP markers ({@code /amp}, {@code .amp.html}, {@code ?amp},
+ * {@code ?outputType=amp}). Everything else, including the order of the remaining query parameters, is
+ * kept as it was.
+ * <p>
+ * The URL is scanned once; one that is already canonical is returned as is, anything else is rebuilt in a
+ * single {@link StringBuilder}.
+ * <p>
+ * The canonical form is only a key. A link is fetched in its {@link #fetchForm(String) fetch form}, which
+ * keeps the link as it was found apart from the fragment and tracking parameters: forcing {@code https} would
+ * cut off publishers that only serve {@code http}, and the AMP and trailing-slash rewrites are guesses that
+ * the publisher may answer with a 404.
+ */
+@Component
+public class UrlCanonicalizer {
+    private static final Set<String> TRACKING_PARAMS = Set.of("fbclid", "gclid", "gclsrc", "dclid", "msclkid",
+            "yclid", "igshid", "mc_cid", "mc_eid", "_ga");
+
+    private final boolean forceHttps;
+
+    public UrlCanonicalizer(@Value("${crawler.canonical.force-https:true}") boolean forceHttps) {
+        this.forceHttps = forceHttps;
+    }
+
+    public boolean isForceHttps() {
+        return forceHttps;
+    }
+
+    /**
+     * @return the canonical form, or null for anything that is not an absolute http(s) URL with a host
+     */
+    public String canonicalize(String url) {
+        return normalize(url, forceHttps, true);
+    }
+
+    /**
+     * Drops the fragment and tracking parameters, and lower-cases the scheme and host, but otherwise leaves
+     * the URL as it was found: no switch to {@code https}, and AMP markers and trailing slashes are kept.
+     *
+     * @return the form to fetch the URL in, or null for anything that is not an absolute http(s) URL with a host
+     */
+    public String fetchForm(String url) {
+        return normalize(url, false, false);
+    }
+
+    private static String normalize(String url, boolean forceHttps, boolean canonical) {
+        if (url == null) {
+            return null;
+        }
+        int start = 0;
+        int end = url.length();
+        while (start < end && url.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && url.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        boolean https;
+        int authorityStart;
+        if (url.regionMatches(true, start, "https://", 0, 8)) {
+            https = true;
+            authorityStart = start + 8;
+        } else if (url.regionMatches(true, start, "http://", 0, 7)) {
+            https = false;
+            authorityStart = start + 7;
+        } else {
+            return null;
+        }
+        boolean dirty = start != 0 || end != url.length()
+                || !url.startsWith(https ? "https://" : "http://", start);
+
+        int fragment = url.indexOf('#', authorityStart);
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+            dirty = true;
+        }
+
+        int authorityEnd = authorityStart;
+        int portStart = -1;
+        while (authorityEnd < end) {
+            char c = url.charAt(authorityEnd);
+            if (c == '/' || c == '?') {
+                break;
+            }
+            if (c == ':') {
+                portStart = authorityEnd;
+            } else if (c == ']' || c == '@') {
+                // IPv6 literal or user info: an earlier ':' was not the port separator.
+                portStart = -1;
+            } else if (c >= 'A' && c <= 'Z') {
+                dirty = true;
+            }
+            authorityEnd++;
+        }
+        int hostEnd = portStart >= 0 ? portStart : authorityEnd;
+        if (hostEnd == authorityStart) {
+            return null;
+        }
+        String port = portStart >= 0 ? url.substring(portStart + 1, authorityEnd) : null;
+        boolean defaultPort = port != null && (port.isEmpty() || https && "443".equals(port) || !https && "80".equals(port));
+        boolean upgrade = !https && forceHttps && (port == null || defaultPort);
+        boolean keepPort = port != null && !defaultPort;
+        if (upgrade || defaultPort) {
+            dirty = true;
+        }
+        boolean trailingDot = url.charAt(hostEnd - 1) == '.';
+        if (trailingDot) {
+            dirty = true;
+        }
+
+        int queryStart = url.indexOf('?', authorityEnd);
+        if (queryStart >= end) {
+            queryStart = -1;
+        }
+        int pathStart = authorityEnd;
+        int pathEnd = queryStart >= 0 ? queryStart : end;
+        if (queryStart >= 0) {
+            // Rare enough that it is always rebuilt; empty or tracking-only queries disappear.
+            dirty = true;
+        }
+
+        // AMP variants: a leading /amp/ segment, a trailing /amp segment, and name.amp.html.
+        int ampSuffix = -1;
+        if (canonical) {
+            if (url.startsWith("/amp/", pathStart)) {
+                pathStart += 4;
+                dirty = true;
+            }
+            while (pathEnd - pathStart > 1 && url.charAt(pathEnd - 1) == '/') {
+                pathEnd--;
+                dirty = true;
+            }
+            if (pathEnd - pathStart >= 4 && url.startsWith("/amp", pathEnd - 4)) {
+                pathEnd -= 4;
+                dirty = true;
+                while (pathEnd - pathStart > 1 && url.charAt(pathEnd - 1) == '/') {
+                    pathEnd--;
+                }
+            }
+            ampSuffix = ampSuffixIndex(url, pathStart, pathEnd);
+        }
+        if (ampSuffix >= 0 || pathEnd == pathStart) {
+            dirty = true;
+        }
+
+        if (!dirty) {
+            return url;
+        }
+
+        StringBuilder out = new StringBuilder(end - start + 1);
+        out.append(https || upgrade ? "https://" : "http://");
+        for (int i = authorityStart; i < (trailingDot ? hostEnd - 1 : hostEnd); i++) {
+            char c = url.charAt(i);
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+        if (keepPort) {
+            out.append(':').append(port);
+        }
+        if (pathEnd == pathStart) {
+            out.append('/');
+        } else if (ampSuffix >= 0) {
+            out.append(url, pathStart, ampSuffix).append(url, ampSuffix + 4, pathEnd);
+        } else {
+            out.append(url, pathStart, pathEnd);
+        }
+        if (queryStart >= 0) {
+            appendQuery(url, queryStart + 1, end, canonical, out);
+        }
+        return out.toString();
+    }
+
+    // Index of ".amp" in a last path segment such as "title-123.amp.html", or -1.
+    private static int ampSuffixIndex(String url, int pathStart, int pathEnd) {
+        int lastSlash = url.lastIndexOf('/', pathEnd - 1);
+        int segmentStart = Math.max(lastSlash, pathStart);
+        int amp = url.indexOf(".amp.", segmentStart);
+        return amp >= 0 && amp + 5 < pathEnd ? amp : -1;
+    }
+
+    private static void appendQuery(String url, int from, int end, boolean canonical, StringBuilder out) {
+        boolean first = true;
+        int paramStart = from;
+        while (paramStart < end) {
+            int paramEnd = url.indexOf('&', paramStart);
+            if (paramEnd < 0 || paramEnd > end) {
+                paramEnd = end;
+            }
+            if (paramEnd > paramStart && !isDropped(url, paramStart, paramEnd, canonical)) {
+                out.append(first ? '?' : '&').append(url, paramStart, paramEnd);
+                first = false;
+            }
+            paramStart = paramEnd + 1;
+        }
+    }
+
+    // AMP parameters are only dropped from the canonical form; tracking parameters from both.
+    private static boolean isDropped(String url, int start, int end, boolean canonical) {
+        int equals = url.indexOf('=', start);
+        int nameEnd = equals >= 0 && equals < end ? equals : end;
+        int nameLength = nameEnd - start;
+        if (nameLength >= 4 && url.regionMatches(true, start, "utm_", 0, 4)) {
+            return true;
+        }
+        if (canonical && nameLength == 3 && url.regionMatches(true, start, "amp", 0, 3)) {
+            return true;
+        }
+        if (canonical && nameLength == 10 && url.regionMatches(start, "outputType", 0, 10)) {
+            return end - nameEnd == 4 && url.regionMatches(true, nameEnd + 1, "amp", 0, 3);
+        }
+        // Only names of tracking-parameter length are worth a lookup.
+        return nameLength >= 3 && nameLength <= 7 && TRACKING_PARAMS.contains(url.substring(start, nameEnd));
+    }
+}
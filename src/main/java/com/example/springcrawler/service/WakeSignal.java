@@ -0,0 +1,34 @@
+package com.example.springcrawler.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalescing wake-up flag for a bot loop: any number of {@link #signal()} calls while the bot is busy
+ * collapse into a single immediate wake-up on its next {@link #await(long)}.
+ */
+public class WakeSignal {
+    private boolean signalled;
+
+    public synchronized void signal() {
+        signalled = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait until signalled or until {@code timeoutMs} elapses.
+     *
+     * @return true if woken by a signal, false on timeout
+     */
+    public synchronized boolean await(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (!signalled) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return false;
+            }
+            wait(remainingMs);
+        }
+        signalled = false;
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Source;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArticleExtractorTests {
+
+	// Default selectors, with a trailing comment section the streaming parser should never need to read.
+	private static final String DEFAULT_SELECTORS_PAGE = """
+			<!DOCTYPE html>
+			<html><head><title>Ignored</title></head>
+			<body>
+			<header><h1>Giá vàng tăng mạnh</h1></header>
+			<p class="description">Giá vàng trong nước tăng theo thế giới.</p>
+			<article class="fck_detail"><p>Đoạn một.</p><p>Đoạn <b>hai</b>.</p></article>
+			<section class="comments"><h1>Bình luận</h1><p class="description">Not the lead.</p></section>
+			<script>var tracking = true;</script>
+			</body></html>
+			""";
+
+	// Head metadata from Open Graph and JSON-LD, plus a canonical link.
+	private static final String METADATA_PAGE = """
+			<html><head>
+			<meta property="og:title" content="OG title">
+			<meta name="description" content="Meta description">
+			<link rel="canonical" href="https://example.com/news/canonical.html">
+			<script type="application/ld+json">{"@type":"NewsArticle","headline":"LD title","image":{"@type":"ImageObject","url":"/images/ld.jpg"}}</script>
+			</head>
+			<body>
+			<h1>Body title</h1>
+			<p class="description">Body description</p>
+			<article class="fck_detail"><p>Body text.</p></article>
+			</body></html>
+			""";
+
+	// Custom selectors where the content selector matches nested elements and the removal selector applies.
+	private static final String CUSTOM_SELECTORS_PAGE = """
+			<html><head></head>
+			<body>
+			<div class="story-title">Custom title</div>
+			<div class="content"><p>Outer start.</p>
+			  <div class="content"><p>Inner.</p><div class="ad">Buy now</div></div>
+			  <p>Outer end.</p>
+			</div>
+			<span class="lead">Custom lead</span>
+			<figure><img class="hero" data-src="https://cdn.example.com/hero.jpg" src="placeholder.gif"></figure>
+			<footer><div class="story-title">Footer title</div></footer>
+			</body></html>
+			""";
+
+	@Test
+	void streamingAndDomExtractTheSameArticleWithDefaultSelectors() throws IOException {
+		assertSameInBothModes(DEFAULT_SELECTORS_PAGE, null);
+	}
+
+	@Test
+	void streamingAndDomExtractTheSameArticleFromHeadMetadata() throws IOException {
+		ArticleExtractor.ExtractedArticle article = assertSameInBothModes(METADATA_PAGE, null);
+
+		assertThat(article.title()).isEqualTo("OG title");
+		assertThat(article.imageUrl()).isEqualTo("https://example.com/images/ld.jpg");
+		assertThat(article.canonicalUrl()).isEqualTo("https://example.com/news/canonical.html");
+	}
+
+	@Test
+	void streamingAndDomExtractTheSameArticleWithCustomSelectors() throws IOException {
+		Source source = new Source();
+		source.setId(7L);
+		source.setTitleSelector(".story-title");
+		source.setContentSelector("div.content");
+		source.setDescriptionSelector("span.lead");
+		source.setImageSelector("img.hero");
+		source.setRemovalSelector(".ad");
+
+		ArticleExtractor.ExtractedArticle article = assertSameInBothModes(CUSTOM_SELECTORS_PAGE, source);
+
+		assertThat(article.title()).isEqualTo("Custom title");
+		assertThat(article.content()).isEqualTo("Outer start. Inner. Outer end.");
+		assertThat(article.imageUrl()).isEqualTo("https://cdn.example.com/hero.jpg");
+	}
+
+	private ArticleExtractor.ExtractedArticle assertSameInBothModes(String html, Source source) throws IOException {
+		ArticleExtractor.ExtractedArticle first = null;
+		for (boolean metadataFirst : new boolean[]{true, false}) {
+			ArticleExtractor.ExtractedArticle streamed = extractor(true, metadataFirst).extract(fetchResult(html), source);
+			ArticleExtractor.ExtractedArticle parsed = extractor(false, metadataFirst).extract(fetchResult(html), source);
+
+			assertThat(streamed).as("metadata-first=%s", metadataFirst).isEqualTo(parsed);
+			assertThat(streamed.content()).isNotBlank();
+			if (first == null) {
+				first = streamed;
+			}
+		}
+		return first;
+	}
+
+	private ArticleExtractor extractor(boolean streaming, boolean metadataFirst) {
+		CrawlHttpClient httpClient = new CrawlHttpClient("test-agent", 1000, 1000, 1 << 20);
+		return new ArticleExtractor(new SelectorRegistry(), httpClient, new ArticleMetadataReader(), streaming, metadataFirst);
+	}
+
+	private CrawlHttpClient.FetchResult fetchResult(String html) {
+		return new CrawlHttpClient.FetchResult(200, URI.create("https://example.com/news/article.html"),
+				HttpHeaders.of(Map.of(), (name, value) -> true), html.getBytes(StandardCharsets.UTF_8), null);
+	}
+}
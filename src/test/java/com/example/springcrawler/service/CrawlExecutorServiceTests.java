@@ -0,0 +1,38 @@
+package com.example.springcrawler.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CrawlExecutorServiceTests {
+
+	@Test
+	void shutdownFailsQueuedTasksInsteadOfLeavingThemHanging() {
+		// One token per thousand seconds, so the second task for the host stays queued.
+		CrawlExecutorService executor = new CrawlExecutorService(new HostGuard(0.001, 1, 5, 300), 2, 1, false);
+		assertThat(executor.submit("example.com", () -> "first").join()).isEqualTo("first");
+		CompletableFuture<String> queued = executor.submit("example.com", () -> "second");
+
+		executor.shutdown();
+
+		assertThatThrownBy(queued::join).hasCauseInstanceOf(RejectedExecutionException.class);
+		assertThatThrownBy(() -> executor.submit("other.example.com", () -> "late").join())
+				.hasCauseInstanceOf(RejectedExecutionException.class);
+	}
+
+	@Test
+	void onlyRecordedPagesCount() {
+		CrawlExecutorService executor = new CrawlExecutorService(new HostGuard(1000.0, 10, 5, 300), 2, 1, false);
+		executor.submit("example.com", () -> "listing").join();
+		assertThat(executor.getPagesFetched()).isZero();
+
+		executor.recordPageFetched();
+
+		assertThat(executor.getPagesFetched()).isEqualTo(1);
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,39 @@
+package com.example.springcrawler.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostGuardTests {
+
+	@Test
+	void evictsOnlyHostsThatLookFresh() throws InterruptedException {
+		HostGuard guard = new HostGuard(1000.0, 1, 1, 300);
+		guard.reserve("quiet.example.com");
+		guard.reserve("failing.example.com");
+		guard.recordFailure("failing.example.com");
+		guard.setCrawlDelay("slow.example.com", Duration.ofSeconds(10));
+		// At 1000 tokens a second the one-token buckets are full again well within this.
+		Thread.sleep(50);
+
+		guard.evictIdleHosts();
+
+		assertThat(guard.getTrackedHostCount()).isEqualTo(2);
+		assertThat(guard.blockedUntil("failing.example.com")).isNotNull();
+		assertThat(guard.getUnhealthyHosts()).extracting(HostGuard.HostStatus::host).containsExactly("failing.example.com");
+	}
+
+	@Test
+	void keepsHostsStillWaitingForATokenAndHostsWithFailures() {
+		HostGuard guard = new HostGuard(0.001, 1, 5, 300);
+		guard.reserve("busy.example.com");
+		guard.recordFailure("flaky.example.com");
+
+		guard.evictIdleHosts();
+
+		assertThat(guard.getTrackedHostCount()).isEqualTo(2);
+		assertThat(guard.reserve("busy.example.com")).isPositive();
+	}
+}
@@ -0,0 +1,162 @@
+package com.example.springcrawler.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HtmlArchiveTests {
+
+	private static final long SEGMENT_BYTES = 1024 * 1024;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void storedPagesReadBackAndTheNewestCopyWins() throws IOException {
+		HtmlArchive archive = open(SEGMENT_BYTES, 4 * SEGMENT_BYTES);
+		archive.store(1L, page("https://example.com/a.html", "<html>first</html>", "UTF-8"));
+		archive.store(2L, page("https://example.com/b.html", "<html>second</html>", null));
+		archive.store(1L, page("https://example.com/a.html", "<html>first, again</html>", "UTF-8"));
+
+		HtmlArchive.ArchivedPage first = archive.read(1L).orElseThrow();
+		assertThat(first.postId()).isEqualTo(1L);
+		assertThat(first.uri()).isEqualTo(URI.create("https://example.com/a.html"));
+		assertThat(first.charset()).isEqualTo("UTF-8");
+		assertThat(new String(first.body(), StandardCharsets.UTF_8)).isEqualTo("<html>first, again</html>");
+		assertThat(archive.read(2L).orElseThrow().charset()).isNull();
+		assertThat(archive.read(3L)).isEmpty();
+		archive.close();
+	}
+
+	@Test
+	void reopeningKeepsAppendingToTheLastSegmentWhileItHasRoom() throws IOException {
+		HtmlArchive archive = open(SEGMENT_BYTES, 4 * SEGMENT_BYTES);
+		archive.store(1L, page("https://example.com/a.html", "<html>old</html>", null));
+		archive.store(1L, page("https://example.com/a.html", "<html>new</html>", null));
+		archive.store(2L, page("https://example.com/b.html", "<html>b</html>", null));
+		archive.close();
+
+		HtmlArchive reopened = open(SEGMENT_BYTES, 4 * SEGMENT_BYTES);
+
+		assertThat(reopened.getSegmentCount()).isEqualTo(1);
+		assertThat(reopened.getPageCount()).isEqualTo(2);
+		assertThat(body(reopened.read(1L))).isEqualTo("<html>new</html>");
+		assertThat(body(reopened.read(2L))).isEqualTo("<html>b</html>");
+		reopened.store(3L, page("https://example.com/c.html", "<html>c</html>", null));
+		assertThat(Files.exists(directory.resolve("segment-000002.dat"))).isFalse();
+		assertThat(body(reopened.read(3L))).isEqualTo("<html>c</html>");
+		reopened.close();
+
+		HtmlArchive again = open(SEGMENT_BYTES, 4 * SEGMENT_BYTES);
+		assertThat(again.getPageCount()).isEqualTo(3);
+		assertThat(body(again.read(3L))).isEqualTo("<html>c</html>");
+		again.close();
+	}
+
+	@Test
+	void rollsFullSegmentsAndDropsTheOldestPastRetention() throws IOException {
+		HtmlArchive archive = open(SEGMENT_BYTES, 2 * SEGMENT_BYTES);
+		// Random bytes do not compress, so each record takes about 400 KB and a segment holds two.
+		for (long postId = 1; postId <= 10; postId++) {
+			archive.store(postId, page("https://example.com/" + postId + ".html", randomBody(postId, 400 * 1024), null));
+		}
+
+		assertThat(archive.getSegmentCount()).isGreaterThan(1);
+		assertThat(archive.getSizeBytes()).isLessThanOrEqualTo(3 * SEGMENT_BYTES);
+		assertThat(Files.exists(directory.resolve("segment-000001.dat"))).isFalse();
+		assertThat(archive.read(1L)).isEmpty();
+		assertThat(archive.read(10L).orElseThrow().body()).isEqualTo(randomBody(10L, 400 * 1024));
+		assertThat(archive.read(9L).orElseThrow().body()).isEqualTo(randomBody(9L, 400 * 1024));
+		archive.close();
+	}
+
+	@Test
+	void reopenIgnoresATornIndexEntryAndOneThatPointsPastTheData() throws IOException {
+		HtmlArchive archive = open(SEGMENT_BYTES, 4 * SEGMENT_BYTES);
+		archive.store(1L, page("https://example.com/a.html", "<html>a</html>", null));
+		archive.store(2L, page("https://example.com/b.html", "<html>b</html>", null));
+		archive.close();
+		Path index = directory.resolve("segment-000001.idx");
+		long dataSize = Files.size(directory.resolve("segment-000001.dat"));
+		// A whole entry whose record never reached the data file, then a crash halfway through the next one.
+		ByteBuffer pastTheData = ByteBuffer.allocate(20).putLong(3L).putLong(dataSize).putInt(100).flip();
+		Files.write(index, pastTheData.array(), StandardOpenOption.APPEND);
+		Files.write(index, new byte[]{0, 0, 0, 0, 0, 0, 0, 4, 0, 0, 0}, StandardOpenOption.APPEND);
+
+		HtmlArchive reopened = open(SEGMENT_BYTES, 4 * SEGMENT_BYTES);
+
+		assertThat(reopened.isEnabled()).isTrue();
+		assertThat(reopened.getPageCount()).isEqualTo(2);
+		assertThat(body(reopened.read(1L))).isEqualTo("<html>a</html>");
+		assertThat(body(reopened.read(2L))).isEqualTo("<html>b</html>");
+		assertThat(reopened.read(3L)).isEmpty();
+		assertThat(reopened.read(4L)).isEmpty();
+		// The dropped entry would now point at this record if it had been left in the index.
+		reopened.store(5L, page("https://example.com/e.html", "<html>" + "e".repeat(200) + "</html>", null));
+		reopened.close();
+
+		HtmlArchive again = open(SEGMENT_BYTES, 4 * SEGMENT_BYTES);
+		assertThat(again.read(3L)).isEmpty();
+		assertThat(again.getPageCount()).isEqualTo(3);
+		again.close();
+	}
+
+	@Test
+	void sealedSegmentsStayReadableWithOnlyOneMapped() throws IOException {
+		HtmlArchive archive = open(SEGMENT_BYTES, 8 * SEGMENT_BYTES, 1);
+		for (long postId = 1; postId <= 6; postId++) {
+			archive.store(postId, page("https://example.com/" + postId + ".html", randomBody(postId, 400 * 1024), null));
+		}
+
+		assertThat(archive.getSegmentCount()).isGreaterThan(2);
+		for (long postId = 1; postId <= 6; postId++) {
+			assertThat(archive.read(postId).orElseThrow().body()).isEqualTo(randomBody(postId, 400 * 1024));
+		}
+		assertThat(archive.read(1L).orElseThrow().body()).isEqualTo(randomBody(1L, 400 * 1024));
+		archive.close();
+	}
+
+	private HtmlArchive open(long segmentMaxBytes, long retentionMaxBytes) {
+		return open(segmentMaxBytes, retentionMaxBytes, 8);
+	}
+
+	private HtmlArchive open(long segmentMaxBytes, long retentionMaxBytes, int mappedSegments) {
+		HtmlArchive archive = new HtmlArchive(true, directory.toString(), segmentMaxBytes, retentionMaxBytes,
+				mappedSegments);
+		archive.open();
+		assertThat(archive.isEnabled()).isTrue();
+		return archive;
+	}
+
+	private CrawlHttpClient.FetchResult page(String url, String html, String charset) {
+		return page(url, html.getBytes(StandardCharsets.UTF_8), charset);
+	}
+
+	private CrawlHttpClient.FetchResult page(String url, byte[] body, String charset) {
+		return new CrawlHttpClient.FetchResult(200, URI.create(url), HttpHeaders.of(Map.of(), (name, value) -> true),
+				body, charset);
+	}
+
+	private byte[] randomBody(long seed, int size) {
+		byte[] body = new byte[size];
+		new Random(seed).nextBytes(body);
+		return body;
+	}
+
+	private String body(Optional<HtmlArchive.ArchivedPage> page) {
+		return new String(page.orElseThrow().body(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,122 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Source;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LinkPatternMatcherTests {
+
+	private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(true);
+
+	@Test
+	void starMatchesAnyRunOfCharactersIncludingSlashes() {
+		LinkPatternMatcher matcher = LinkPatternMatcher.compile("https://example.com/*-*.html", canonicalizer);
+
+		assertThat(matcher.matches("https://example.com/gia-vang-123.html")).isTrue();
+		assertThat(matcher.matches("https://example.com/kinh-doanh/gia-vang-123.html")).isTrue();
+		assertThat(matcher.matches("https://example.com/gold.html")).isFalse();
+		assertThat(matcher.matches("https://example.com/gia-vang-123.html?page=2")).isFalse();
+		assertThat(matcher.matches("https://other.com/gia-vang-123.html")).isFalse();
+	}
+
+	@Test
+	void leadingAndTrailingStarsLeaveThatEndOpen() {
+		LinkPatternMatcher matcher = LinkPatternMatcher.compile("*/video/* *-p2.html", canonicalizer);
+
+		assertThat(matcher.matches("https://example.com/video/clip-1.html")).isTrue();
+		assertThat(matcher.matches("https://example.com/news/list-p2.html")).isTrue();
+		assertThat(matcher.matches("https://example.com/news/list-p2.html?x=1")).isFalse();
+		assertThat(matcher.matches("https://example.com/news/clip-1.html")).isFalse();
+	}
+
+	@Test
+	void segmentsMustAppearInOrderWithoutOverlapping() {
+		LinkPatternMatcher matcher = LinkPatternMatcher.compile("/a*b*a", canonicalizer);
+
+		assertThat(matcher.matches("https://example.com/a-b-a")).isTrue();
+		assertThat(matcher.matches("https://example.com/aba")).isTrue();
+		assertThat(matcher.matches("https://example.com/ab")).isFalse();
+		assertThat(matcher.matches("https://example.com/a-a-b")).isFalse();
+	}
+
+	@Test
+	void slashPatternsMatchThePathAndQuery() {
+		LinkPatternMatcher matcher = LinkPatternMatcher.compile("""
+				/tag/*
+				/search?q=*
+				/
+				""", canonicalizer);
+
+		assertThat(matcher.matches("https://example.com/tag/vang")).isTrue();
+		assertThat(matcher.matches("https://example.com/search?q=vang")).isTrue();
+		assertThat(matcher.matches("https://example.com")).isTrue();
+		assertThat(matcher.matches("https://example.com/")).isTrue();
+		assertThat(matcher.matches("https://example.com/news/tag/vang")).isFalse();
+		// '?' is literal, not a single-character wildcard.
+		assertThat(matcher.matches("https://example.com/searchXq=vang")).isFalse();
+	}
+
+	@Test
+	void patternsWithoutStarMatchExactly() {
+		LinkPatternMatcher matcher = LinkPatternMatcher.compile("https://example.com/about.html /contact", canonicalizer);
+
+		assertThat(matcher.matches("https://example.com/about.html")).isTrue();
+		assertThat(matcher.matches("https://example.com/contact")).isTrue();
+		assertThat(matcher.matches("https://example.com/about.html?x=1")).isFalse();
+		assertThat(matcher.matches("https://example.com/contact/us")).isFalse();
+		assertThat(LinkPatternMatcher.compile("  \n ", canonicalizer).isEmpty()).isTrue();
+	}
+
+	@Test
+	void fullUrlPatternsAreBroughtToTheCanonicalFormOfTheLinks() {
+		LinkPatternMatcher matcher = LinkPatternMatcher.compile("""
+				http://Example.com/news/*
+				HTTP://Example.com/about.html/
+				http://*.Example.com/video/*
+				""", canonicalizer);
+
+		assertThat(matcher.matches(canonicalizer.canonicalize("http://example.com/news/a.html"))).isTrue();
+		assertThat(matcher.matches(canonicalizer.canonicalize("http://example.com/about.html"))).isTrue();
+		assertThat(matcher.matches(canonicalizer.canonicalize("http://m.example.com/video/a.html"))).isTrue();
+		// The path keeps its trailing slash, so the pattern is not widened to /newsletter.
+		assertThat(matcher.matches("https://example.com/newsletter")).isFalse();
+
+		UrlCanonicalizer keepScheme = new UrlCanonicalizer(false);
+		LinkPatternMatcher plain = LinkPatternMatcher.compile("http://Example.com/news/*", keepScheme);
+		assertThat(plain.matches(keepScheme.canonicalize("http://example.com/news/a.html"))).isTrue();
+		assertThat(plain.matches("https://example.com/news/a.html")).isFalse();
+	}
+
+	@Test
+	void excludesWinOverIncludes() {
+		Source source = new Source();
+		source.setId(1L);
+		source.setLinkIncludePatterns("https://example.com/*.html");
+		source.setLinkExcludePatterns("/tag/* *-p2.html");
+		LinkFilterRegistry.LinkFilter filter = new LinkFilterRegistry(canonicalizer).forSource(source);
+
+		assertThat(filter.hasIncludes()).isTrue();
+		assertThat(filter.accepts("https://example.com/news/a.html")).isTrue();
+		assertThat(filter.accepts("https://example.com/tag/a.html")).isFalse();
+		assertThat(filter.accepts("https://example.com/news/list-p2.html")).isFalse();
+		assertThat(filter.accepts("https://example.com/news/a")).isFalse();
+	}
+
+	@Test
+	void withoutIncludesEverythingNotExcludedIsAccepted() {
+		Source source = new Source();
+		source.setId(2L);
+		source.setLinkExcludePatterns("/tag/*");
+		LinkFilterRegistry registry = new LinkFilterRegistry(canonicalizer);
+		LinkFilterRegistry.LinkFilter filter = registry.forSource(source);
+
+		assertThat(filter.hasIncludes()).isFalse();
+		assertThat(filter.accepts("https://example.com/anything")).isTrue();
+		assertThat(filter.accepts("https://example.com/tag/x")).isFalse();
+
+		// An edit made elsewhere is picked up because the cached filter no longer matches the settings.
+		source.setLinkExcludePatterns("/video/*");
+		assertThat(registry.forSource(source).accepts("https://example.com/tag/x")).isTrue();
+	}
+}
@@ -0,0 +1,102 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Post;
+import com.example.springcrawler.repository.PostRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"crawler.seen-filter.expected-urls=1000"
+})
+@Import({PostService.class, SeenUrlFilter.class})
+// Claims must commit so the other worker's transaction can see them.
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PostServiceClaimTests {
+
+	private static final int POST_COUNT = 40;
+
+	@Autowired
+	private PostService postService;
+
+	@Autowired
+	private PostRepository postRepository;
+
+	@BeforeEach
+	void seedUncrawlPosts() {
+		postRepository.deleteAll();
+		for (int i = 0; i < POST_COUNT; i++) {
+			Post post = new Post();
+			post.setCrawlUrl("https://example.com/article-" + i + ".html");
+			post.setStatus(Post.Status.UNCRAWL);
+			postRepository.save(post);
+		}
+	}
+
+	@Test
+	void twoWorkersNeverClaimTheSamePost() throws Exception {
+		Set<Long> claimed = ConcurrentHashMap.newKeySet();
+		List<Long> duplicates = new ArrayList<>();
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for (String workerId : List.of("worker-a", "worker-b")) {
+				Callable<Void> worker = () -> {
+					List<Post> batch;
+					while (!(batch = postService.claimUncrawlPosts(workerId, 3, Duration.ofMinutes(5))).isEmpty()) {
+						for (Post post : batch) {
+							assertThat(post.getClaimedBy()).isEqualTo(workerId);
+							if (!claimed.add(post.getId())) {
+								synchronized (duplicates) {
+									duplicates.add(post.getId());
+								}
+							}
+						}
+					}
+					return null;
+				};
+				workers.add(pool.submit(worker));
+			}
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		assertThat(duplicates).isEmpty();
+		assertThat(claimed).hasSize(POST_COUNT);
+	}
+
+	@Test
+	void expiredLeaseIsClaimedAgain() {
+		List<Post> first = postService.claimUncrawlPosts("worker-a", POST_COUNT, Duration.ofMillis(-1));
+		assertThat(first).hasSize(POST_COUNT);
+
+		List<Post> second = postService.claimUncrawlPosts("worker-b", POST_COUNT, Duration.ofMinutes(5));
+		assertThat(second).hasSize(POST_COUNT);
+		assertThat(second).allSatisfy(post -> {
+			assertThat(post.getClaimedBy()).isEqualTo("worker-b");
+			assertThat(post.getAttemptCount()).isEqualTo(2);
+		});
+
+		assertThat(postService.claimUncrawlPosts("worker-a", POST_COUNT, Duration.ofMinutes(5))).isEmpty();
+	}
+}
@@ -0,0 +1,156 @@
+package com.example.springcrawler.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class RobotsTxtServiceTests {
+
+	private static final String ORIGIN = "https://example.com";
+
+	private final RobotsTxtService service = new RobotsTxtService(mock(CrawlHttpClient.class),
+			new HostGuard(2.0, 5, 5, 300), true, "SpringCrawler/2.1", 86400, 600, 60, 100);
+
+	@Test
+	void groupsNamingTheCrawlerAreMergedAndReplaceTheWildcardGroup() {
+		RobotsTxtService.RobotsRules rules = service.parse(ORIGIN, """
+				User-agent: *
+				Disallow: /
+
+				User-agent: otherbot
+				User-agent: springcrawler
+				Disallow: /private/
+
+				User-agent: otherbot
+				Disallow: /other/
+
+				# Matched again further down; RFC 9309 merges the two groups.
+				User-agent: SpringCrawler
+				Disallow: /drafts/
+				Crawl-delay: 2.5
+
+				Sitemap: https://example.com/sitemap.xml
+				""");
+
+		assertThat(rules.isAllowed(ORIGIN + "/news/a.html")).isTrue();
+		assertThat(rules.isAllowed(ORIGIN + "/other/a.html")).isTrue();
+		assertThat(rules.isAllowed(ORIGIN + "/private/a.html")).isFalse();
+		assertThat(rules.isAllowed(ORIGIN + "/drafts/a.html")).isFalse();
+		assertThat(rules.crawlDelay()).isEqualTo(Duration.ofMillis(2500));
+		assertThat(rules.sitemaps()).containsExactly("https://example.com/sitemap.xml");
+	}
+
+	@Test
+	void agentLinesMustNameTheWholeProductToken() {
+		String text = """
+				User-agent: *
+				Disallow: /wildcard/
+
+				User-agent: springcrawler-test
+				Disallow: /longer-token/
+
+				User-agent: %s
+				Disallow: /matched/
+				""";
+
+		for (String agent : new String[]{"SPRINGCRAWLER", "springcrawler/1.0", "SpringCrawler (+https://example.com/bot)"}) {
+			RobotsTxtService.RobotsRules rules = service.parse(ORIGIN, text.formatted(agent));
+			assertThat(rules.isAllowed(ORIGIN + "/matched/a.html")).as(agent).isFalse();
+			assertThat(rules.isAllowed(ORIGIN + "/wildcard/a.html")).as(agent).isTrue();
+			assertThat(rules.isAllowed(ORIGIN + "/longer-token/a.html")).as(agent).isTrue();
+		}
+
+		RobotsTxtService.RobotsRules prefix = service.parse(ORIGIN, text.formatted("spring"));
+		assertThat(prefix.isAllowed(ORIGIN + "/matched/a.html")).isTrue();
+		assertThat(prefix.isAllowed(ORIGIN + "/wildcard/a.html")).isFalse();
+	}
+
+	@Test
+	void cacheKeepsAtMostMaxOriginsEntries() {
+		RobotsTxtService small = new RobotsTxtService(mock(CrawlHttpClient.class),
+				new HostGuard(2.0, 5, 5, 300), true, "springcrawler", 86400, 600, 60, 10);
+
+		for (int i = 0; i < 25; i++) {
+			assertThat(small.isAllowed("https://host" + i + ".example.com/a.html")).isTrue();
+			assertThat(small.getCachedOriginCount()).isLessThanOrEqualTo(10);
+		}
+		assertThat(small.getFetchCount()).isEqualTo(25);
+	}
+
+	@Test
+	void longestMatchWinsAndAllowWinsTies() {
+		RobotsTxtService.RobotsRules rules = service.parse(ORIGIN, """
+				User-agent: *
+				Disallow: /shop
+				Allow: /shop/public/
+				Disallow: /shop/public/cart
+				Disallow: /page
+				Allow: /page
+				Allow: /*.html
+				Disallow: /*.html?print
+				""");
+
+		assertThat(rules.isAllowed(ORIGIN + "/shop/item")).isFalse();
+		assertThat(rules.isAllowed(ORIGIN + "/shop/public/item")).isTrue();
+		assertThat(rules.isAllowed(ORIGIN + "/shop/public/cart")).isFalse();
+		assertThat(rules.isAllowed(ORIGIN + "/page/1")).isTrue();
+		assertThat(rules.isAllowed(ORIGIN + "/news/a.html")).isTrue();
+		assertThat(rules.isAllowed(ORIGIN + "/news/a.html?print=1")).isFalse();
+	}
+
+	@Test
+	void dollarAnchorsThePatternToTheEndOfThePath() {
+		RobotsTxtService.RobotsRules rules = service.parse(ORIGIN, """
+				User-agent: *
+				Disallow: /*.php$
+				Disallow: /exact$
+				""");
+
+		assertThat(rules.isAllowed(ORIGIN + "/index.php")).isFalse();
+		assertThat(rules.isAllowed(ORIGIN + "/index.php?page=2")).isTrue();
+		assertThat(rules.isAllowed(ORIGIN + "/index.phpx")).isTrue();
+		assertThat(rules.isAllowed(ORIGIN + "/exact")).isFalse();
+		assertThat(rules.isAllowed(ORIGIN + "/exact#section")).isFalse();
+		assertThat(rules.isAllowed(ORIGIN + "/exact/more")).isTrue();
+	}
+
+	@Test
+	void emptyDisallowAllowsEverything() {
+		RobotsTxtService.RobotsRules rules = service.parse(ORIGIN, """
+				User-agent: *
+				Disallow:
+				""");
+
+		assertThat(rules.isAllowed(ORIGIN + "/")).isTrue();
+		assertThat(rules.isAllowed(ORIGIN + "/anything/at/all")).isTrue();
+		assertThat(RobotsTxtService.Rule.compile(false, "")).isNull();
+	}
+
+	@Test
+	void ruleMatchesWildcardSegmentsInOrder() {
+		RobotsTxtService.Rule rule = RobotsTxtService.Rule.compile(false, "/a*b*c");
+		String path = "/a-x-b-y-c/z";
+
+		assertThat(rule.length()).isEqualTo(6);
+		assertThat(rule.matches(path, 0, path.length())).isTrue();
+		assertThat(rule.matches("/a-c-b", 0, 6)).isFalse();
+		// Only the given range counts, so a match past "to" is not one.
+		assertThat(rule.matches(path, 0, 8)).isFalse();
+		assertThat(RobotsTxtService.Rule.compile(false, "/a*c$").matches(path, 0, 10)).isTrue();
+	}
+
+	@Test
+	void bareOriginIsMatchedAsTheRootPath() {
+		RobotsTxtService.RobotsRules rules = service.parse(ORIGIN, """
+				User-agent: *
+				Disallow: /$
+				""");
+
+		assertThat(rules.isAllowed(ORIGIN)).isFalse();
+		assertThat(rules.isAllowed(ORIGIN + "/")).isFalse();
+		assertThat(rules.isAllowed(ORIGIN + "/a.html")).isTrue();
+	}
+}
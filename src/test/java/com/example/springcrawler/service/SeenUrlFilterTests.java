@@ -0,0 +1,94 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.repository.PostRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SeenUrlFilterTests {
+
+	@Test
+	void reportsEverythingAsSeenUntilWarm() {
+		PostRepository repository = mock(PostRepository.class);
+		SeenUrlFilter filter = new SeenUrlFilter(repository, 1000, 0.01, 1 << 20);
+
+		assertThat(filter.isReady()).isFalse();
+		assertThat(filter.mightContain("https://example.com/never-stored.html")).isTrue();
+	}
+
+	@Test
+	void warmUpLoadsCrawlAndCanonicalUrls() throws InterruptedException {
+		PostRepository repository = mock(PostRepository.class);
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[]{1L, "https://example.com/a.html", null});
+		rows.add(new Object[]{2L, "https://example.com/b.html", "https://example.com/b-canonical.html"});
+		when(repository.findCrawlUrlsAfterId(eq(0L), any(Pageable.class))).thenReturn(rows);
+		when(repository.findCrawlUrlsAfterId(eq(2L), any(Pageable.class))).thenReturn(List.of());
+		SeenUrlFilter filter = new SeenUrlFilter(repository, 1000, 0.01, 1 << 20);
+
+		filter.warmUpOnStartup();
+		awaitReady(filter);
+
+		assertThat(filter.mightContain("https://example.com/a.html")).isTrue();
+		assertThat(filter.mightContain("https://example.com/b.html")).isTrue();
+		assertThat(filter.mightContain("https://example.com/b-canonical.html")).isTrue();
+		assertThat(filter.getInsertions()).isEqualTo(3);
+	}
+
+	@Test
+	void storedUrlsAreFoundAndFalsePositivesStayNearTheConfiguredRate() throws InterruptedException {
+		SeenUrlFilter filter = warmEmptyFilter(1000, 0.01, 1 << 20);
+		for (int i = 0; i < 1000; i++) {
+			filter.put("https://example.com/stored-" + i + ".html");
+		}
+
+		int falsePositives = 0;
+		for (int i = 0; i < 1000; i++) {
+			assertThat(filter.mightContain("https://example.com/stored-" + i + ".html")).isTrue();
+			if (filter.mightContain("https://example.com/other-" + i + ".html")) {
+				falsePositives++;
+			}
+		}
+		assertThat(falsePositives).isLessThan(40);
+	}
+
+	@Test
+	void sizesTheBitArrayForTheExpectedUrlsAndRespectsTheByteCap() throws InterruptedException {
+		SeenUrlFilter sized = warmEmptyFilter(1000, 0.01, 1 << 20);
+		// -n ln p / (ln 2)^2 = 9586 bits, rounded up to whole longs.
+		assertThat(sized.getMemoryBytes()).isEqualTo(1200);
+		assertThat(sized.getHashCount()).isEqualTo(7);
+		assertThat(sized.getExpectedFalsePositiveRate()).isLessThan(0.011);
+
+		SeenUrlFilter capped = warmEmptyFilter(1000, 0.01, 64);
+		assertThat(capped.getMemoryBytes()).isEqualTo(64);
+		assertThat(capped.getHashCount()).isEqualTo(1);
+		assertThat(capped.getExpectedFalsePositiveRate()).isGreaterThan(0.01);
+	}
+
+	private SeenUrlFilter warmEmptyFilter(long expectedUrls, double falsePositiveRate, long maxBytes) throws InterruptedException {
+		PostRepository repository = mock(PostRepository.class);
+		when(repository.findCrawlUrlsAfterId(anyLong(), any(Pageable.class))).thenReturn(List.of());
+		SeenUrlFilter filter = new SeenUrlFilter(repository, expectedUrls, falsePositiveRate, maxBytes);
+		filter.warmUpOnStartup();
+		awaitReady(filter);
+		return filter;
+	}
+
+	private void awaitReady(SeenUrlFilter filter) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!filter.isReady() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(filter.isReady()).isTrue();
+	}
+}
@@ -0,0 +1,104 @@
+package com.example.springcrawler.service;
+
+import com.example.springcrawler.model.Source;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class SourceDiscoverySchedulerTests {
+
+	private SourceService sourceService;
+	private SourceDiscoveryScheduler scheduler;
+
+	@BeforeEach
+	void createScheduler() {
+		sourceService = mock(SourceService.class);
+		// Mirror what the real service does to the entity after the UPDATE.
+		doAnswer(invocation -> {
+			Source source = invocation.getArgument(0);
+			source.setLastVisitedAt(invocation.getArgument(1));
+			source.setNextVisitAt(invocation.getArgument(2));
+			source.setRevisitIntervalSeconds(invocation.getArgument(3));
+			source.setYieldEwma(invocation.getArgument(4));
+			return null;
+		}).when(sourceService).updateVisitSchedule(any(Source.class), any(), any(), anyInt(), anyDouble());
+		// The defaults: budget 200, 50 sources per cycle, target 5 links per visit.
+		scheduler = new SourceDiscoveryScheduler(sourceService, 50, 200, 60, 86400, 300, 5);
+	}
+
+	@Test
+	void defaultBudgetSplitGivesQuotasBelowTheTarget() {
+		List<Source> due = new ArrayList<>();
+		for (long id = 1; id <= 50; id++) {
+			due.add(source(id, 600, 5.0));
+		}
+
+		List<SourceDiscoveryScheduler.SourceVisit> visits = scheduler.planCycle(due);
+
+		assertThat(visits).hasSize(50);
+		assertThat(visits).allSatisfy(visit -> assertThat(visit.linkQuota()).isEqualTo(4));
+	}
+
+	@Test
+	void sourceThatKeepsFillingItsQuotaIsNotBackedOff() {
+		Source source = source(1L, 600, 5.0);
+
+		for (int visit = 0; visit < 10; visit++) {
+			scheduler.recordVisit(source, 4, true, LocalDateTime.now());
+		}
+
+		assertThat(source.getRevisitIntervalSeconds()).isLessThanOrEqualTo(600);
+		assertThat(source.getYieldEwma()).isGreaterThanOrEqualTo(5.0);
+	}
+
+	@Test
+	void truncatedVisitAboveTargetShortensTheInterval() {
+		Source source = source(1L, 600, 5.0);
+
+		scheduler.recordVisit(source, 10, true, LocalDateTime.now());
+
+		assertThat(source.getRevisitIntervalSeconds()).isLessThan(600);
+	}
+
+	@Test
+	void truncatedVisitAfterQuietPeriodDoesNotLengthenTheInterval() {
+		Source source = source(1L, 600, 0.5);
+
+		scheduler.recordVisit(source, 1, true, LocalDateTime.now());
+
+		assertThat(source.getRevisitIntervalSeconds()).isEqualTo(600);
+	}
+
+	@Test
+	void completeVisitBelowTargetStillBacksOff() {
+		Source source = source(1L, 600, 5.0);
+		ArgumentCaptor<Integer> interval = ArgumentCaptor.forClass(Integer.class);
+
+		scheduler.recordVisit(source, 4, false, LocalDateTime.now());
+
+		verify(sourceService).updateVisitSchedule(eq(source), any(), any(), interval.capture(), anyDouble());
+		assertThat(interval.getValue()).isGreaterThan(600);
+	}
+
+	private Source source(long id, int intervalSeconds, double yieldEwma) {
+		Source source = new Source();
+		source.setId(id);
+		source.setUrl("https://example.com/section-" + id);
+		source.setRevisitIntervalSeconds(intervalSeconds);
+		source.setYieldEwma(yieldEwma);
+		return source;
+	}
+}
@@ -0,0 +1,45 @@
+package com.example.springcrawler.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UrlCanonicalizerTests {
+
+	private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(true);
+
+	@Test
+	void canonicalFormForcesHttpsAndDropsNoise() {
+		assertThat(canonicalizer.canonicalize("http://Example.com:80/news/a.html/?utm_source=x&id=7#top"))
+				.isEqualTo("https://example.com/news/a.html?id=7");
+		assertThat(canonicalizer.canonicalize("https://example.com/news/a.amp.html?amp"))
+				.isEqualTo("https://example.com/news/a.html");
+		assertThat(canonicalizer.canonicalize("http://example.com:8080/a")).isEqualTo("http://example.com:8080/a");
+		assertThat(canonicalizer.canonicalize("ftp://example.com/a")).isNull();
+	}
+
+	@Test
+	void fetchFormKeepsTheSchemeItWasFoundWith() {
+		String found = "http://Example.com/news/a.html?fbclid=abc&id=7#comments";
+
+		assertThat(canonicalizer.fetchForm(found)).isEqualTo("http://example.com/news/a.html?id=7");
+		assertThat(canonicalizer.canonicalize(found)).isEqualTo("https://example.com/news/a.html?id=7");
+		assertThat(canonicalizer.fetchForm("https://example.com/a")).isEqualTo("https://example.com/a");
+
+		// AMP markers and trailing slashes are only rewritten in the key; the publisher may not serve the guess.
+		assertThat(canonicalizer.fetchForm("http://example.com/amp/news/a.amp.html?amp&utm_medium=x"))
+				.isEqualTo("http://example.com/amp/news/a.amp.html?amp");
+		assertThat(canonicalizer.fetchForm("https://example.com/news/a/amp/")).isEqualTo("https://example.com/news/a/amp/");
+		assertThat(canonicalizer.fetchForm("https://example.com/news/a.html?outputType=amp#x"))
+				.isEqualTo("https://example.com/news/a.html?outputType=amp");
+		assertThat(canonicalizer.canonicalize("https://example.com/news/a/amp/")).isEqualTo("https://example.com/news/a");
+	}
+
+	@Test
+	void httpsCanBeLeftAlone() {
+		UrlCanonicalizer keepScheme = new UrlCanonicalizer(false);
+
+		assertThat(keepScheme.canonicalize("http://example.com/a")).isEqualTo("http://example.com/a");
+		assertThat(keepScheme.isForceHttps()).isFalse();
+	}
+}